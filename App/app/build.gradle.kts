@@ -24,6 +24,11 @@ android {
             )
         }
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true // Разметки строк для тестов Robolectric
+        }
+    }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
@@ -31,6 +36,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation(platform("com.google.firebase:firebase-bom:32.7.0"))
     implementation("com.google.firebase:firebase-auth")
     implementation("com.google.firebase:firebase-firestore")
@@ -40,8 +46,13 @@ dependencies {
     implementation(libs.activity)
     implementation(libs.constraintlayout)
     implementation("androidx.recyclerview:recyclerview:1.2.1")
+    implementation("androidx.asynclayoutinflater:asynclayoutinflater:1.0.0")
+    implementation("androidx.cardview:cardview:1.0.0")
     implementation("com.google.android.material:material:1.6.1")
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.test.core)
+    testImplementation(testFixtures(project(":core")))
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Пакетные операции над выбранными задачами: выполнение, перенос на дату, удаление.
+// Записи всех задач упаковываются в минимальное число операций журнала WriteOutbox (до MAX_BATCH_WRITES
+// записей, каждая применяется одним пакетом), о результате сообщается одним вызовом. Записи одной задачи
+// (подзадачи и сама задача) не разделяются между пакетами, поэтому пакет удаляет задачу атомарно вместе
+// с ее подзадачами. Подзадачи выбранных задач читаются запросами к группе коллекций по MAX_TASKS_PER_QUERY задач.
+public class BulkTaskWriter {
+    private static final String TAG = "BulkTaskWriter";
+    static final int MAX_BATCH_WRITES = WriteOutbox.MAX_WRITES_PER_OPERATION; // Ограничение Firestore на пакет записи
+
+    // Результат пакетной операции
+    public interface Callback {
+        void onComplete(int taskCount, int commitCount);
+        void onFailed(Exception error);
+    }
+
+    private final FirebaseFirestore db;
+    private final WriteOutbox outbox;
+    private final TaskDeleter taskDeleter; // Задачи, чьи записи не помещаются в один пакет, удаляются каскадно
+
+    public BulkTaskWriter(FirebaseFirestore db, WriteOutbox outbox, TaskDeleter taskDeleter) {
+        this.db = db;
+        this.outbox = outbox;
+        this.taskDeleter = taskDeleter;
+    }
+
+    // Отметка задач и их невыполненных подзадач выполненными
+    public void complete(List<Task> tasks, Callback callback) {
+        if (tasks.isEmpty()) return;
+        loadSubTasks(tasks).addOnSuccessListener(subTasksByTask -> {
+            Packer packer = new Packer();
+            for (Task task : tasks) {
+                List<Write> writes = new ArrayList<>();
+                for (DocumentSnapshot subTask : listOrEmpty(subTasksByTask.get(task.getId()))) {
+                    if (!Boolean.TRUE.equals(subTask.getBoolean(SubTaskCodec.FIELD_IS_COMPLETED))) {
+                        writes.add(Write.update(subTask.getReference(), SubTaskCodec.FIELD_IS_COMPLETED, true));
+                    }
+                }
+                if (!task.isCompleted() || !writes.isEmpty()) {
+                    writes.add(Write.update(taskRef(task), TaskCodec.FIELD_IS_COMPLETED, true));
+                }
+                packer.add(writes);
+            }
+            packer.commit(tasks.size(), callback);
+        }).addOnFailureListener(callback::onFailed);
+    }
+
+    // Перенос задач на другой день с сохранением времени каждой задачи
+    public void moveToDate(List<Task> tasks, Calendar day, Callback callback) {
+        if (tasks.isEmpty()) return;
+        Packer packer = new Packer();
+        Calendar calendar = Calendar.getInstance();
+        for (Task task : tasks) {
+            calendar.setTime(task.getDateTime() != null ? task.getDateTime() : day.getTime());
+            calendar.set(day.get(Calendar.YEAR), day.get(Calendar.MONTH), day.get(Calendar.DAY_OF_MONTH));
+            Date moved = calendar.getTime();
+            if (moved.equals(task.getDateTime())) continue; // Задача уже в этом дне
+            List<Write> writes = new ArrayList<>(1);
+            writes.add(Write.update(taskRef(task), TaskCodec.FIELD_DATE_TIME, moved));
+            packer.add(writes);
+        }
+        packer.commit(tasks.size(), callback);
+    }
+
+    // Удаление задач вместе с подзадачами
+    public void delete(List<Task> tasks, Callback callback) {
+        if (tasks.isEmpty()) return;
+        loadSubTasks(tasks).addOnSuccessListener(subTasksByTask -> {
+            Packer packer = new Packer();
+            for (Task task : tasks) {
+                List<DocumentSnapshot> subTasks = listOrEmpty(subTasksByTask.get(task.getId()));
+                if (subTasks.size() + 1 > MAX_BATCH_WRITES) {
+                    taskDeleter.delete(task.getId()); // Не помещается в пакет — постраничное каскадное удаление
+                    continue;
+                }
+                List<Write> writes = new ArrayList<>(subTasks.size() + 1);
+                for (DocumentSnapshot subTask : subTasks) {
+                    writes.add(Write.delete(subTask.getReference()));
+                }
+                writes.add(Write.delete(taskRef(task))); // Задача — в том же пакете, что и ее подзадачи
+                packer.add(writes);
+            }
+            packer.commit(tasks.size(), callback);
+        }).addOnFailureListener(callback::onFailed);
+    }
+
+    private DocumentReference taskRef(Task task) {
+        return db.collection("tasks").document(task.getId());
+    }
+
+    // Документы подзадач выбранных задач, сгруппированные по ID задачи
+    private com.google.android.gms.tasks.Task<Map<String, List<DocumentSnapshot>>> loadSubTasks(List<Task> tasks) {
+        List<com.google.android.gms.tasks.Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (int from = 0; from < tasks.size(); from += SubTaskFeed.MAX_TASKS_PER_QUERY) {
+            List<String> chunk = new ArrayList<>();
+            for (Task task : tasks.subList(from, Math.min(from + SubTaskFeed.MAX_TASKS_PER_QUERY, tasks.size()))) {
+                chunk.add(task.getId());
+            }
+            queries.add(db.collectionGroup("subtasks")
+                    .whereEqualTo(SubTaskCodec.FIELD_USER_ID, tasks.get(from).getUserId())
+                    .whereIn(SubTaskCodec.FIELD_TASK_ID, chunk)
+                    .get());
+        }
+        return Tasks.<QuerySnapshot>whenAllSuccess(queries).continueWith(result -> {
+            Map<String, List<DocumentSnapshot>> byTask = new HashMap<>();
+            for (QuerySnapshot snapshot : result.getResult()) {
+                for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                    String taskId = doc.getReference().getParent().getParent().getId();
+                    List<DocumentSnapshot> list = byTask.get(taskId);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        byTask.put(taskId, list);
+                    }
+                    list.add(doc);
+                }
+            }
+            return byTask;
+        });
+    }
+
+    private static List<DocumentSnapshot> listOrEmpty(List<DocumentSnapshot> list) {
+        return list != null ? list : new ArrayList<>();
+    }
+
+    // Одна запись пакета
+    private static final class Write {
+        final DocumentReference ref;
+        final String field; // null — удаление документа
+        final Object value;
+
+        private Write(DocumentReference ref, String field, Object value) {
+            this.ref = ref;
+            this.field = field;
+            this.value = value;
+        }
+
+        static Write update(DocumentReference ref, String field, Object value) {
+            return new Write(ref, field, value);
+        }
+
+        static Write delete(DocumentReference ref) {
+            return new Write(ref, null, null);
+        }
+    }
+
+    // Последовательная упаковка групп записей: группа целиком уходит в текущий пакет, если помещается, иначе в новый
+    private final class Packer {
+        final List<WriteOutbox.Operation> batches = new ArrayList<>();
+        WriteOutbox.Operation current;
+        int currentWrites = 0;
+        int totalWrites = 0;
+
+        void add(List<Write> group) {
+            if (group.isEmpty()) return;
+            if (group.size() > MAX_BATCH_WRITES) { // Только обновления: атомарность не нужна, группа делится на пакеты
+                for (int from = 0; from < group.size(); from += MAX_BATCH_WRITES) {
+                    add(group.subList(from, Math.min(from + MAX_BATCH_WRITES, group.size())));
+                }
+                return;
+            }
+            if (current == null || currentWrites + group.size() > MAX_BATCH_WRITES) {
+                current = new WriteOutbox.Operation("bulk");
+                batches.add(current);
+                currentWrites = 0;
+            }
+            for (Write write : group) {
+                if (write.field == null) {
+                    current.delete(write.ref);
+                } else {
+                    current.update(write.ref, write.field, write.value);
+                }
+            }
+            currentWrites += group.size();
+            totalWrites += group.size();
+        }
+
+        void commit(int taskCount, Callback callback) {
+            List<com.google.android.gms.tasks.Task<Void>> commits = new ArrayList<>(batches.size());
+            for (WriteOutbox.Operation batch : batches) {
+                commits.add(outbox.submit(batch));
+            }
+            Log.d(TAG, "Committing " + totalWrites + " writes for " + taskCount + " tasks in " + batches.size() + " batches");
+            Tasks.whenAll(commits)
+                    .addOnSuccessListener(aVoid -> callback.onComplete(taskCount, batches.size()))
+                    .addOnFailureListener(callback::onFailed);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.todolist;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Очередь записей полей документов с объединением повторных изменений. Записи копятся по ключу
+// «путь документа + поле»: повторное изменение того же поля заменяет значение, а возврат к значению,
+// которое было до первого изменения, снимает запись совсем. Очередь отправляется одной операцией журнала WriteOutbox
+// через WINDOW_MS после последнего изменения, но не позже MAX_DELAY_MS после первого.
+// Интерфейс обновляется оптимистично вызывающим кодом; при ошибке пакета каждая запись сообщает
+// о ней своему получателю для отката. Используется только из главного потока.
+public class CoalescingWriteQueue {
+    private static final String TAG = "CoalescingWriteQueue";
+    static final long WINDOW_MS = 400; // Тишина, после которой очередь отправляется
+    static final long MAX_DELAY_MS = 2000; // Предельная задержка первой записи при непрерывных изменениях
+    private static final int MAX_BATCH_WRITES = WriteOutbox.MAX_WRITES_PER_OPERATION; // Ограничение Firestore на пакет записи
+
+    // Получатель ошибки записи: значение поля в документе осталось прежним
+    public interface Listener {
+        void onFailed(Exception error);
+    }
+
+    private final WriteOutbox outbox;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>(); // Записи по ключу в порядке первого изменения
+    private long firstPendingAt = 0; // Время первого изменения в очереди
+    private int enqueuedCount = 0; // Сколько изменений поставлено в очередь
+    private int collapsedCount = 0; // Сколько изменений поглощено более поздними
+    private int committedCount = 0; // Сколько записей отправлено
+
+    public CoalescingWriteQueue(WriteOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    // Запись значения поля. baseline — значение в документе до изменения: если поле вернулось к нему
+    // до отправки, запись не нужна. listener последнего изменения получит ошибку записи
+    public void set(DocumentReference ref, String field, Object value, Object baseline, Listener listener) {
+        String key = ref.getPath() + "#" + field;
+        enqueuedCount++;
+        PendingWrite write = pending.get(key);
+        if (write == null) {
+            write = new PendingWrite(ref, field, baseline);
+            pending.put(key, write);
+        } else {
+            collapsedCount++;
+        }
+        write.value = value;
+        write.listener = listener;
+        if (Objects.equals(write.value, write.baseline)) { // Пользователь передумал: в документе уже это значение
+            pending.remove(key);
+            collapsedCount++;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        handler.removeCallbacks(flushRunnable);
+        if (pending.isEmpty()) {
+            firstPendingAt = 0;
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (firstPendingAt == 0) firstPendingAt = now;
+        long deadline = firstPendingAt + MAX_DELAY_MS;
+        handler.postAtTime(flushRunnable, Math.min(now + WINDOW_MS, deadline));
+    }
+
+    // Немедленная отправка накопленных записей (onStop)
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        firstPendingAt = 0;
+        if (pending.isEmpty()) return;
+        List<PendingWrite> writes = new ArrayList<>(pending.values());
+        pending.clear();
+        for (int from = 0; from < writes.size(); from += MAX_BATCH_WRITES) {
+            commit(writes.subList(from, Math.min(from + MAX_BATCH_WRITES, writes.size())));
+        }
+    }
+
+    private void commit(List<PendingWrite> writes) {
+        WriteOutbox.Operation operation = new WriteOutbox.Operation("status");
+        for (PendingWrite write : writes) {
+            operation.update(write.ref, write.field, write.value);
+        }
+        committedCount += writes.size();
+        outbox.submit(operation)
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Committed " + writes.size() + " coalesced writes " + describe()))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Batch of " + writes.size() + " writes failed", e);
+                    for (PendingWrite write : writes) {
+                        if (write.listener != null) write.listener.onFailed(e);
+                    }
+                });
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public String describe() {
+        return "[pending=" + pending.size() + ", enqueued=" + enqueuedCount + ", collapsed=" + collapsedCount + ", committed=" + committedCount + "]";
+    }
+
+    // Ожидающая запись одного поля
+    private static final class PendingWrite {
+        final DocumentReference ref;
+        final String field;
+        final Object baseline; // Значение до первого изменения
+        Object value;
+        Listener listener;
+
+        PendingWrite(DocumentReference ref, String field, Object baseline) {
+            this.ref = ref;
+            this.field = field;
+            this.baseline = baseline;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.todolist;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Планировщик перерисовок UI не чаще одного раза за кадр. Части экрана (индикатор прогресса,
+// строки списка) помечаются "грязными" по ключу; повторные пометки до следующего кадра
+// объединяются, и каждое действие выполняется один раз в обратном вызове Choreographer.
+// Используется только из главного потока.
+public class FrameInvalidator implements Choreographer.FrameCallback {
+    private static final String TAG = "FrameInvalidator";
+
+    private final Map<Object, Runnable> dirty = new LinkedHashMap<>(); // Действия, ожидающие кадра, по ключу
+    private boolean frameScheduled = false;
+    private int invalidationCount = 0; // Сколько раз что-то помечалось
+    private int flushedCount = 0; // Сколько действий выполнено
+    private int frameCount = 0; // Сколько кадров что-то перерисовывали
+
+    // Пометка части UI по ключу; action выполнится в ближайшем кадре один раз, даже если пометок было несколько
+    public void invalidate(Object key, Runnable action) {
+        invalidationCount++;
+        dirty.put(key, action);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    // Снятие всех пометок (например, при уничтожении экрана)
+    public void cancelAll() {
+        dirty.clear();
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (dirty.isEmpty()) return;
+        List<Runnable> actions = new ArrayList<>(dirty.values());
+        dirty.clear(); // Действия могут снова что-то пометить — это попадет в следующий кадр
+        frameCount++;
+        flushedCount += actions.size();
+        for (Runnable action : actions) {
+            action.run();
+        }
+        Log.v(TAG, "Frame flushed " + actions.size() + " actions " + describe());
+    }
+
+    // --- Счетчики ---
+    public int getInvalidationCount() { return invalidationCount; }
+    public int getFlushedCount() { return flushedCount; }
+    public int getFrameCount() { return frameCount; }
+
+    public String describe() {
+        return "[invalidations=" + invalidationCount + ", flushed=" + flushedCount + ", frames=" + frameCount + "]";
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.todolist;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.Locale;
+
+// Длительности кадров окна активности (Window.OnFrameMetricsAvailableListener): полное время кадра
+// и его этапы пишутся в LatencyStats как участки "Frame.*", считаются пропущенные (дольше интервала
+// обновления экрана) и замороженные (дольше FROZEN_NANOS) кадры. Метрики приходят в отдельном потоке
+public class FrameMetricsCollector implements Window.OnFrameMetricsAvailableListener {
+    private static final String TAG = "FrameMetrics";
+    public static final String FRAME_TOTAL = "Frame.total";
+    public static final String FRAME_INPUT_ANIMATION = "Frame.inputAnimation"; // Ввод и анимации
+    public static final String FRAME_LAYOUT = "Frame.layoutMeasure";
+    public static final String FRAME_DRAW = "Frame.draw"; // Запись списков отображения
+    public static final String FRAME_RENDER = "Frame.render"; // Синхронизация, команды GPU и обмен буферов
+    private static final long FROZEN_NANOS = 700_000_000L; // Порог замороженного кадра
+    private static final long DEFAULT_FRAME_NANOS = 16_666_667L; // 60 Гц, если частота экрана неизвестна
+
+    private final LatencyStats stats;
+    private HandlerThread thread; // Поток доставки метрик
+    private Window window;
+    private long frameBudgetNanos = DEFAULT_FRAME_NANOS;
+    private long frames = 0;
+    private long jankyFrames = 0;
+    private long frozenFrames = 0;
+    private long droppedReports = 0; // Метрики, которые система не успела доставить
+
+    public FrameMetricsCollector(LatencyStats stats) {
+        this.stats = stats;
+    }
+
+    // Начало сбора для окна (onResume)
+    public void start(Window window) {
+        if (this.window != null) return;
+        float refreshRate = window.getWindowManager().getDefaultDisplay().getRefreshRate();
+        synchronized (this) {
+            frameBudgetNanos = refreshRate > 0 ? (long) (1_000_000_000L / refreshRate) : DEFAULT_FRAME_NANOS;
+        }
+        thread = new HandlerThread("frame-metrics");
+        thread.start();
+        this.window = window;
+        window.addOnFrameMetricsAvailableListener(this, new Handler(thread.getLooper()));
+    }
+
+    // Остановка сбора (onPause); накопленные счетчики сохраняются
+    public void stop() {
+        if (window == null) return;
+        try {
+            window.removeOnFrameMetricsAvailableListener(this);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Listener was not registered", e);
+        }
+        thread.quitSafely();
+        window = null;
+        thread = null;
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(Window window, FrameMetrics metrics, int dropCountSinceLastInvocation) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && metrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) {
+            return; // Первый кадр окна включает построение всей иерархии — это не пропуск кадра
+        }
+        long total = metrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        stats.record(FRAME_TOTAL, total);
+        stats.record(FRAME_INPUT_ANIMATION, metrics.getMetric(FrameMetrics.INPUT_HANDLING_DURATION)
+                + metrics.getMetric(FrameMetrics.ANIMATION_DURATION));
+        stats.record(FRAME_LAYOUT, metrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION));
+        stats.record(FRAME_DRAW, metrics.getMetric(FrameMetrics.DRAW_DURATION));
+        stats.record(FRAME_RENDER, metrics.getMetric(FrameMetrics.SYNC_DURATION)
+                + metrics.getMetric(FrameMetrics.COMMAND_ISSUE_DURATION)
+                + metrics.getMetric(FrameMetrics.SWAP_BUFFERS_DURATION));
+        synchronized (this) {
+            frames++;
+            if (total > frameBudgetNanos) jankyFrames++;
+            if (total > FROZEN_NANOS) frozenFrames++;
+            droppedReports += dropCountSinceLastInvocation;
+        }
+    }
+
+    public synchronized void reset() {
+        frames = 0;
+        jankyFrames = 0;
+        frozenFrames = 0;
+        droppedReports = 0;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.US, "frames=%d, janky=%d (%.1f%%, budget %.1fms), frozen=%d, droppedReports=%d",
+                frames, jankyFrames, frames > 0 ? jankyFrames * 100.0 / frames : 0.0, frameBudgetNanos / 1_000_000.0,
+                frozenFrames, droppedReports);
+    }
+}
@@ -6,11 +6,16 @@ import android.app.AlarmManager;
 import android.app.DatePickerDialog;
 import android.app.PendingIntent;
 import android.app.TimePickerDialog;
+import android.content.ClipData;
+import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CalendarView;
@@ -22,6 +27,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.constraintlayout.widget.ConstraintSet;
 import androidx.core.app.ActivityCompat;
@@ -31,20 +37,22 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.pm.PackageManager;
@@ -53,6 +61,7 @@ import androidx.annotation.NonNull;
 public class MainMenuActivity extends AppCompatActivity {
     // Объявление переменных экземпляра для управления UI и данными
     private TaskAdapter taskAdapter; // Адаптер для отображения списка задач в RecyclerView
+    private ActionMode selectionMode; // Панель действий режима выбора задач; null — режим выбора не активен
     private ProgressBar taskProgressBar; // Индикатор прогресса выполнения задач
     private TextView progressTextView; // Текстовое поле для отображения процента прогресса
     private FirebaseFirestore db; // Экземпляр Firestore для работы с базой данных
@@ -61,15 +70,50 @@ public class MainMenuActivity extends AppCompatActivity {
     private CalendarView calendarView; // Виджет календаря для выбора даты
     private LinearLayout calendarContainer; // Контейнер для отображения календаря
     private LinearLayout progressContainer; // Контейнер для индикатора прогресса и текста
+    private final FrameMetricsCollector frameMetrics = new FrameMetricsCollector(UiTrace.stats()); // Длительности кадров окна для отчета о производительности
     private Calendar selectedCalendarDate; // Объект Calendar для хранения выбранной даты
     private RecyclerView taskRecyclerView; // Список для отображения задач
     private ImageButton toggleViewButton; // Кнопка для переключения между видами календаря и списка
     private boolean isCalendarViewVisible = true; // Флаг, указывающий, отображается ли календарь
+    private final TaskIndex taskIndex = new TaskIndex(); // Локальный индекс задач пользователя по дате
+    private final SnapshotSubscriptionManager subscriptions = new SnapshotSubscriptionManager(); // Владелец всех слушателей Firestore экрана
+    private int windowCenterMonth = Integer.MIN_VALUE; // Центральный месяц окна подписок (год * 12 + месяц)
+    private TaskListPager listPager; // Постраничная загрузка задач для режима списка
+    private TaskStore taskStore; // Локальное хранилище задач: из него читаются списки экрана
+    private static final ExecutorService STORE_EXECUTOR = Executors.newSingleThreadExecutor(); // Поток хранилища: записи синхронизации и выборки по порядку
+    private int storeReadGeneration = 0; // Номер последней выборки из хранилища
+    private boolean storeReadPending = false; // Выборка отправлена, результат еще не применен
+    private boolean scrollToAnchorPending = false; // Список только что открыт: первая непустая выборка прокручивается к сегодняшнему дню
 
     // Константы для форматирования даты и настройки напоминаний
-    private final SimpleDateFormat listDateFormatter = new SimpleDateFormat("EEEE, dd MMMM", Locale.getDefault()); // Форматтер для отображения даты в списке
     private final String[] reminderOptions = {"Без напоминания", "В момент задачи", "За 15 минут", "За 30 минут", "За 1 час", "За 1 день"}; // Варианты времени напоминаний
     private final int[] reminderOffsets = {-1, 0, -15, -30, -60, -1440}; // Смещения в минутах для напоминаний
+    private static final String MONTH_KEY_PREFIX = "month:"; // Префикс ключей подписок на месяцы (режим календаря)
+    private static final int MONTH_WINDOW_RADIUS = 1; // Сколько соседних месяцев подгружать с каждой стороны
+    static final int FULL_REFRESH_THRESHOLD = 64; // Пакет изменений, начиная с которого список перестраивается целиком
+    private static final int PAGE_PREFETCH_DISTANCE = 10; // За сколько строк до края списка подгружать следующую страницу
+    static final String DISPLAY_PREFS = "display_prefs"; // Настройки отображения списка
+    static final String KEY_FLAT_SUBTASKS = "flat_subtasks"; // Подзадачи строками общего списка вместо вложенных списков
+    static final String KEY_WEIGHTED_PROGRESS = "weighted_progress"; // Прогресс с учетом доли выполненных подзадач
+
+    // Получатель изменений индекса от всех подписок на задачи
+    private final TaskFeed.Callback taskFeedCallback = new TaskFeed.Callback() {
+        @Override
+        public void onTasksChanged(TaskFeed feed, List<TaskIndex.Change> changes, boolean fromCache) {
+            if (fromCache && !changes.isEmpty()) {
+                Toast.makeText(MainMenuActivity.this, "Загружено из кэша (оффлайн)", Toast.LENGTH_SHORT).show(); // Уведомление о кэшированных данных
+            }
+            if (taskAdapter != null) {
+                taskAdapter.getUiState().migrateLegacy(db, WriteOutbox.get(MainMenuActivity.this), changes); // Перенос старых флагов isExpanded до построения строк
+            }
+            applyIndexChanges(changes);
+        }
+
+        @Override
+        public void onTasksError(FirebaseFirestoreException error) {
+            handleTasksSnapshotError(error);
+        }
+    };
 
     // Метод жизненного цикла для инициализации активности
     @Override
@@ -114,6 +158,17 @@ public class MainMenuActivity extends AppCompatActivity {
         taskRecyclerView.setLayoutManager(new LinearLayoutManager(this)); // Установка линейного менеджера компоновки
         taskAdapter = new TaskAdapter(new ArrayList<>(), this::updateProgressBarUI, this); // Инициализация адаптера задач
         taskRecyclerView.setAdapter(taskAdapter); // Установка адаптера в RecyclerView
+        taskAdapter.getSubTaskViewPool().prewarm(taskRecyclerView); // Разметки строк подзадач создаются в фоне заранее
+        applyDisplayPrefs(); // Режим отображения подзадач
+        taskStore = new SqliteTaskStore(this);
+        taskAdapter.setTaskStore(taskStore, STORE_EXECUTOR); // Подзадачи сохраняются в хранилище и читаются из него до ответа подписки
+        taskAdapter.setSubTaskFeed(new SubTaskFeed(subscriptions, db.collectionGroup("subtasks").whereEqualTo("userId", userId))); // Подзадачи всех задач списка
+        SubTaskMigration.runOnce(this, db, userId); // Поля userId/taskId для старых подзадач
+        taskAdapter.getTaskDeleter().resumePending(); // Продолжение прерванных каскадных удалений
+        taskAdapter.setSelectionListener(this::onTaskSelectionChanged); // Панель пакетных действий над выбранными задачами
+        taskRecyclerView.addOnScrollListener(pagingScrollListener); // Подгрузка страниц при прокрутке списка
+        listPager = new TaskListPager(subscriptions, db.collection("tasks").whereEqualTo("userId", userId), taskIndex, taskFeedCallback);
+        listPager.setStoreSync(TaskStoreSync.forPage(taskStore, STORE_EXECUTOR, userId)); // Страницы только дополняют хранилище
 
         // Настройка календаря для выбора даты
         selectedCalendarDate = Calendar.getInstance(); // Инициализация текущей датой
@@ -121,12 +176,17 @@ public class MainMenuActivity extends AppCompatActivity {
         calendarView.setOnDateChangeListener((view, year, month, dayOfMonth) -> {
             if (isCalendarViewVisible) { // Проверка, отображается ли календарь
                 selectedCalendarDate.set(year, month, dayOfMonth); // Обновление выбранной даты
-                loadTasksForDate(selectedCalendarDate); // Загрузка задач для выбранной даты
+                ensureMonthWindow(selectedCalendarDate); // Сдвиг окна подписок, если выбран другой месяц
+                loadTasksForDate(selectedCalendarDate); // Выборка задач для выбранной даты из индекса
             }
         });
 
         // Установка обработчиков событий
         toggleViewButton.setOnClickListener(v -> toggleView()); // Обработчик для переключения вида
+        progressContainer.setOnLongClickListener(v -> {
+            showPerformanceMenu(); // Отладочное меню: сводка участков и кадров
+            return true;
+        });
         setupBottomNavigation(bottomNav); // Настройка нижней навигации
 
         // Создание канала уведомлений для Android 8.0 и выше
@@ -142,6 +202,49 @@ public class MainMenuActivity extends AppCompatActivity {
         updateProgressBarUI(); // Обновление индикатора прогресса
     }
 
+    // Снятие слушателей Firestore, пока активность не видна
+    @Override
+    protected void onStop() {
+        subscriptions.pause(); // Запросы сохраняются и будут восстановлены в onStart
+        if (taskAdapter != null && taskAdapter.getSubTaskSubscriptions() != null) {
+            Log.d("Firestore", "Subtask subscriptions on stop: " + taskAdapter.getSubTaskSubscriptions().describe()); // Логирование счетчиков
+            Log.d("Firestore", "Subtask cache on stop: " + taskAdapter.getSubTasksCache().describe()); // Логирование статистики кэша
+        }
+        if (taskAdapter != null) {
+            Log.d("SubTaskViewPool", "Subtask views on stop: " + taskAdapter.getSubTaskViewPool().describe()); // Логирование запаса разметок
+            taskAdapter.getUiState().flush(); // Сохранение отложенных изменений раскрытия
+            taskAdapter.getWriteQueue().flush(); // Отправка отложенных переключений статусов
+            Log.d("CoalescingWriteQueue", "Status writes on stop: " + taskAdapter.getWriteQueue().describe());
+            Log.d("WriteOutbox", "Outbox on stop: " + WriteOutbox.get(this).describe()); // Глубина и возраст неотправленных операций
+            Log.d("TaskUiState", "Task UI state on stop: " + taskAdapter.getUiState().describe());
+        }
+        Log.d("UiTrace", "Performance on stop:\n" + performanceReport()); // Перцентили участков и пропуски кадров
+        super.onStop();
+    }
+
+    // Отписка от Firestore при уничтожении активности
+    @Override
+    protected void onDestroy() {
+        if (taskAdapter != null && taskAdapter.getSubTaskSubscriptions() != null) {
+            taskAdapter.getSubTaskSubscriptions().dispose(); // Отмена отложенных отписок подзадач
+        }
+        if (taskAdapter != null) {
+            taskAdapter.getInvalidator().cancelAll(); // Отмена перерисовок, ожидающих кадра
+            taskAdapter.getSubTaskViewPool().clear(); // Освобождение запаса разметок
+        }
+        subscriptions.clear(); // Удаление всех слушателей
+        if (taskStore != null) {
+            TaskStore store = taskStore;
+            STORE_EXECUTOR.execute(store::close); // Закрытие после уже поставленных записей
+        }
+        super.onDestroy();
+    }
+
+    // Счетчики слушателей для диагностики утечек подписок
+    public SnapshotSubscriptionManager getSubscriptions() {
+        return subscriptions;
+    }
+
     // Обработка результатов запроса разрешений
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
@@ -161,7 +264,64 @@ public class MainMenuActivity extends AppCompatActivity {
         super.onStart();
         if (auth.getCurrentUser() == null) { // Проверка, авторизован ли пользователь
             handleLogout(); // Выход, если пользователь не авторизован
+            return;
         }
+        subscriptions.resume(); // Восстановление слушателей, снятых в onStop
+        WriteOutbox.get(this).resume(); // Отправка операций, ожидавших входа пользователя
+        applyDisplayPrefs(); // Настройки могли измениться в SettingsActivity
+    }
+
+    // Настройки отображения списка (переключаются в SettingsActivity); повторное применение без изменений ничего не делает
+    private void applyDisplayPrefs() {
+        if (taskAdapter == null) return;
+        SharedPreferences prefs = getSharedPreferences(DISPLAY_PREFS, MODE_PRIVATE);
+        taskAdapter.setFlatSubTasks(prefs.getBoolean(KEY_FLAT_SUBTASKS, false));
+        taskAdapter.setProgressWeightedBySubTasks(prefs.getBoolean(KEY_WEIGHTED_PROGRESS, false));
+    }
+
+    // Сбор длительностей кадров, пока активность на экране
+    @Override
+    protected void onResume() {
+        super.onResume();
+        frameMetrics.start(getWindow());
+    }
+
+    @Override
+    protected void onPause() {
+        frameMetrics.stop();
+        super.onPause();
+    }
+
+    // Отчет о производительности: кадры окна и перцентили участков (UiTrace)
+    private String performanceReport() {
+        return "Кадры: " + frameMetrics.describe() + "\n" + UiTrace.stats().describe();
+    }
+
+    // Отладочное меню (долгое нажатие на прогресс): просмотр, копирование и сброс отчета о производительности
+    private void showPerformanceMenu() {
+        String[] actions = {"Показать отчет", "Скопировать отчет", "Сбросить замеры"};
+        new AlertDialog.Builder(this)
+                .setTitle("Производительность")
+                .setItems(actions, (dialog, which) -> {
+                    String report = performanceReport();
+                    Log.i("UiTrace", "Performance report:\n" + report); // Отчет попадает и в лог устройства
+                    if (which == 0) {
+                        new AlertDialog.Builder(this)
+                                .setTitle("Отчет о производительности")
+                                .setMessage(report)
+                                .setPositiveButton("OK", null)
+                                .show();
+                    } else if (which == 1) {
+                        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                        clipboard.setPrimaryClip(ClipData.newPlainText("Performance report", report));
+                        Toast.makeText(this, "Отчет скопирован", Toast.LENGTH_SHORT).show();
+                    } else {
+                        UiTrace.stats().reset();
+                        frameMetrics.reset();
+                        Toast.makeText(this, "Замеры сброшены", Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .show();
     }
 
     // Метод для обработки выхода из системы
@@ -171,6 +331,65 @@ public class MainMenuActivity extends AppCompatActivity {
         finish(); // Завершение текущей активности
     }
 
+    // Режим выбора задач: панель действий показывается, пока выбрана хотя бы одна задача
+    private void onTaskSelectionChanged(int selectedCount) {
+        if (selectedCount == 0) {
+            if (selectionMode != null) selectionMode.finish();
+            return;
+        }
+        if (selectionMode == null) {
+            selectionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionMode != null) {
+            selectionMode.setTitle("Выбрано: " + selectedCount);
+        }
+    }
+
+    // Пакетные действия над выбранными задачами
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.task_selection_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            int itemId = item.getItemId();
+            if (itemId == R.id.action_complete_selected) {
+                taskAdapter.completeSelected(); // Один пакет записей на все выбранные задачи
+                return true;
+            } else if (itemId == R.id.action_move_selected) {
+                Calendar day = Calendar.getInstance();
+                new DatePickerDialog(MainMenuActivity.this, (view, year, month, dayOfMonth) -> {
+                    day.set(year, month, dayOfMonth);
+                    taskAdapter.moveSelectedTo(day); // Перенос с сохранением времени задач
+                }, day.get(Calendar.YEAR), day.get(Calendar.MONTH), day.get(Calendar.DAY_OF_MONTH)).show();
+                return true;
+            } else if (itemId == R.id.action_delete_selected) {
+                new AlertDialog.Builder(MainMenuActivity.this)
+                        .setTitle("Удалить задачи?")
+                        .setMessage("Удалить выбранные задачи (" + taskAdapter.getSelectedCount() + ") и все их подзадачи?")
+                        .setPositiveButton("Удалить", (dialog, which) -> taskAdapter.deleteSelected())
+                        .setNegativeButton("Отмена", null)
+                        .show();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionMode = null;
+            taskAdapter.clearSelection(); // Закрытие панели снимает выбор
+        }
+    };
+
     // Настройка нижней навигационной панели
     private void setupBottomNavigation(BottomNavigationView bottomNav) {
         bottomNav.setOnNavigationItemSelectedListener(item -> {
@@ -215,158 +434,234 @@ public class MainMenuActivity extends AppCompatActivity {
             toggleViewButton.setImageResource(android.R.drawable.ic_menu_agenda); // Установить иконку списка
             constraintSet.connect(R.id.taskRecyclerView, ConstraintSet.TOP, R.id.progress_container, ConstraintSet.BOTTOM, 8); // Привязка RecyclerView к прогрессу
             if (selectedCalendarDate == null) selectedCalendarDate = Calendar.getInstance(); // Инициализация даты, если null
-            loadTasksForDate(selectedCalendarDate); // Загрузка задач для текущей даты
+            listPager.stop(); // В режиме календаря страницы списка не нужны
+            scrollToAnchorPending = false;
+            ensureMonthWindow(selectedCalendarDate); // Подписка на месяц выбранной даты и соседние месяцы
+            loadTasksForDate(selectedCalendarDate); // Выборка задач для текущей даты
         } else { // Если отображается список
             calendarContainer.setVisibility(View.GONE); // Скрыть календарь
             progressContainer.setVisibility(View.GONE); // Скрыть индикатор прогресса
             toggleViewButton.setImageResource(android.R.drawable.ic_menu_today); // Установить иконку календаря
             constraintSet.connect(R.id.taskRecyclerView, ConstraintSet.TOP, R.id.mainmenu_root_layout, ConstraintSet.TOP, 8); // Привязка RecyclerView к верху
-            loadAllTasks(); // Загрузка всех задач
+            clearMonthWindow(); // Окна месяцев заменяются страницами списка
+            listPager.start(startOfToday()); // Первая страница задач, начиная с сегодняшнего дня
+            scrollToAnchorPending = true;
+            loadAllTasks(); // Выборка задач загруженных страниц
         }
 
         constraintSet.applyTo(constraintLayout); // Применение новых constraints
     }
 
-    // Загрузка задач за определенную дату из Firestore
-    private void loadTasksForDate(Calendar selectedDate) {
-        if (selectedDate == null) return; // Выход, если дата не выбрана
+    // Подгрузка страниц списка, когда прокрутка приближается к его краю
+    private final RecyclerView.OnScrollListener pagingScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (isCalendarViewVisible || listPager == null || dy == 0) return; // Страницы используются только в режиме списка
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            if (layoutManager == null) return;
+            if (dy > 0 && layoutManager.findLastVisibleItemPosition() >= taskAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                listPager.loadNext(); // Прокрутка вниз: более поздние задачи
+            } else if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PAGE_PREFETCH_DISTANCE) {
+                listPager.loadPrevious(); // Прокрутка вверх: более ранние задачи
+            }
+        }
 
-        // Создание временного диапазона для выбранной даты (начало и конец дня)
-        Calendar startOfDay = (Calendar) selectedDate.clone();
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+            // Список уже у края и не прокручивается — onScrolled не вызывается, проверяем жест отдельно
+            if (isCalendarViewVisible || listPager == null || newState != RecyclerView.SCROLL_STATE_DRAGGING) return;
+            if (!recyclerView.canScrollVertically(-1)) {
+                listPager.loadPrevious();
+            } else if (!recyclerView.canScrollVertically(1)) {
+                listPager.loadNext();
+            }
+        }
+    };
+
+    // Начало сегодняшнего дня — опорная точка страниц списка
+    private static Date startOfToday() {
+        return new Date(dayRange(Calendar.getInstance())[0]);
+    }
+
+    // Подписка на окно месяцев вокруг выбранной даты: один слушатель на месяц вместо запроса на каждый выбор дня.
+    // Соседние месяцы подгружаются заранее, месяцы вне окна отписываются
+    private void ensureMonthWindow(Calendar date) {
+        if (date == null) return;
+        int centerMonth = date.get(Calendar.YEAR) * 12 + date.get(Calendar.MONTH); // Абсолютный номер месяца
+        if (centerMonth == windowCenterMonth) return; // Окно уже покрывает этот месяц
+        windowCenterMonth = centerMonth;
+
+        // Отписка от месяцев, вышедших из окна
+        for (String key : subscriptions.keysWithPrefix(MONTH_KEY_PREFIX)) {
+            int month = Integer.parseInt(key.substring(MONTH_KEY_PREFIX.length()));
+            if (Math.abs(month - centerMonth) > MONTH_WINDOW_RADIUS) {
+                subscriptions.remove(key); // Задачи месяца отпускаются из индекса
+            }
+        }
+        // Подписка на недостающие месяцы окна, начиная с текущего
+        subscribeToMonth(centerMonth);
+        for (int offset = 1; offset <= MONTH_WINDOW_RADIUS; offset++) {
+            subscribeToMonth(centerMonth + offset);
+            subscribeToMonth(centerMonth - offset);
+        }
+        Log.d("Firestore", "Month window centered at " + centerMonth + ": " + subscriptions.describe()); // Логирование счетчиков слушателей
+    }
+
+    // Подписка на задачи одного месяца [начало месяца, начало следующего месяца)
+    private void subscribeToMonth(int month) {
+        String key = MONTH_KEY_PREFIX + month;
+        if (subscriptions.contains(key)) return; // Месяц уже в окне
+        Calendar start = Calendar.getInstance();
+        start.clear();
+        start.set(month / 12, month % 12, 1); // Полночь первого дня месяца
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.MONTH, 1);
+
+        Query query = db.collection("tasks")
+                .whereEqualTo("userId", userId) // Фильтр по ID пользователя
+                .whereGreaterThanOrEqualTo("dateTime", start.getTime()) // Задачи с датой >= начала месяца
+                .whereLessThan("dateTime", end.getTime()) // Задачи с датой < начала следующего месяца
+                .orderBy("dateTime", Query.Direction.ASCENDING); // Сортировка по дате (возрастание)
+        TaskFeed feed = new TaskFeed(taskIndex, taskFeedCallback);
+        feed.setStoreSync(TaskStoreSync.forRange(taskStore, STORE_EXECUTOR, userId, start.getTimeInMillis(), end.getTimeInMillis())); // Месяц целиком: удаления тоже переносятся
+        subscriptions.replace(key, query, feed);
+    }
+
+    // Отписка от всех месяцев окна
+    private void clearMonthWindow() {
+        subscriptions.removeByPrefix(MONTH_KEY_PREFIX); // Задачи месяцев отпускаются из индекса
+        windowCenterMonth = Integer.MIN_VALUE;
+    }
+
+    // Применение изменений индекса к отображаемому списку: точечно для небольших пакетов,
+    // полной перестройкой из индекса — для начальной загрузки и крупных пакетов
+    private void applyIndexChanges(List<TaskIndex.Change> changes) {
+        if (taskAdapter == null || changes.isEmpty()) return;
+        if (needsFullRefresh(changes.size(), storeReadPending)) {
+            // Ожидающая выборка могла не увидеть эти изменения: новая выборка встанет в очередь после их записи
+            refreshDisplayedTasks();
+            return;
+        }
+        if (isCalendarViewVisible) {
+            // В режиме календаря учитываются только изменения выбранного дня
+            long[] day = dayRange(selectedCalendarDate);
+            List<TaskIndex.Change> dayChanges = new ArrayList<>();
+            for (TaskIndex.Change change : changes) {
+                Task oldTask = isWithin(change.oldTask, day) ? change.oldTask : null;
+                Task newTask = isWithin(change.newTask, day) ? change.newTask : null;
+                if (oldTask != null || newTask != null) {
+                    dayChanges.add(new TaskIndex.Change(oldTask, newTask));
+                }
+            }
+            taskAdapter.applyTaskChanges(dayChanges);
+        } else {
+            taskAdapter.applyTaskChanges(changes);
+        }
+    }
+
+    // Перестраивать ли список выборкой из хранилища вместо точечного применения пакета изменений
+    static boolean needsFullRefresh(int changeCount, boolean storeReadPending) {
+        return changeCount > FULL_REFRESH_THRESHOLD || storeReadPending;
+    }
+
+    private static boolean isWithin(Task task, long[] range) {
+        if (task == null || task.getDateTime() == null) return false;
+        long time = task.getDateTime().getTime();
+        return time >= range[0] && time < range[1];
+    }
+
+    // Границы дня [начало дня, начало следующего дня) в миллисекундах
+    private static long[] dayRange(Calendar date) {
+        Calendar startOfDay = (Calendar) date.clone();
         startOfDay.set(Calendar.HOUR_OF_DAY, 0); // Установка времени на 00:00
         startOfDay.set(Calendar.MINUTE, 0);
         startOfDay.set(Calendar.SECOND, 0);
         startOfDay.set(Calendar.MILLISECOND, 0);
-        Calendar endOfDay = (Calendar) selectedDate.clone();
-        endOfDay.set(Calendar.HOUR_OF_DAY, 23); // Установка времени на 23:59:59.999
-        endOfDay.set(Calendar.MINUTE, 59);
-        endOfDay.set(Calendar.SECOND, 59);
-        endOfDay.set(Calendar.MILLISECOND, 999);
-
-        Log.d("Firestore", "Loading tasks for date: " + selectedDate.getTime()); // Логирование запроса
-        // Запрос задач из Firestore с фильтрацией по пользователю и дате
-        db.collection("tasks")
-                .whereEqualTo("userId", userId) // Фильтр по ID пользователя
-                .whereGreaterThanOrEqualTo("dateTime", startOfDay.getTime()) // Задачи с датой >= начала дня
-                .whereLessThanOrEqualTo("dateTime", endOfDay.getTime()) // Задачи с датой <= конца дня
-                .orderBy("dateTime", Query.Direction.ASCENDING) // Сортировка по дате (возрастание)
-                .addSnapshotListener((querySnapshot, error) -> {
-                    if (error != null) { // Проверка на ошибки
-                        Log.e("FirestoreError", "Error loading tasks for date: ", error); // Логирование ошибки
-                        if (error.getMessage() != null && error.getMessage().contains("UNAVAILABLE")) {
-                            Toast.makeText(this, "Нет интернета. Используем локальные данные.", Toast.LENGTH_LONG).show(); // Уведомление об оффлайн-режиме
-                        } else {
-                            Toast.makeText(this, "Ошибка загрузки задач", Toast.LENGTH_LONG).show(); // Уведомление об ошибке
-                        }
-                        return;
-                    }
+        Calendar startOfNextDay = (Calendar) startOfDay.clone();
+        startOfNextDay.add(Calendar.DAY_OF_MONTH, 1); // Учитывает переход на летнее/зимнее время
+        return new long[]{startOfDay.getTimeInMillis(), startOfNextDay.getTimeInMillis()};
+    }
 
-                    if (taskAdapter == null) return; // Выход, если адаптер не инициализирован
-                    List<Task> tasks = new ArrayList<>(); // Список для хранения задач
-                    if (querySnapshot != null) { // Проверка наличия данных
-                        boolean fromCache = querySnapshot.getMetadata().isFromCache(); // Проверка, из кэша ли данные
-                        if (fromCache) {
-                            Toast.makeText(this, "Загружено из кэша (оффлайн)", Toast.LENGTH_SHORT).show(); // Уведомление о кэшированных данных
-                        }
-                        // Обработка каждого документа в результате запроса
-                        for (QueryDocumentSnapshot doc : querySnapshot) {
-                            try {
-                                Task task = doc.toObject(Task.class); // Преобразование документа в объект Task
-                                task.setId(doc.getId()); // Установка ID задачи
-                                tasks.add(task); // Добавление задачи в список
-                            } catch (Exception e) {
-                                Log.e("Firestore", "Error converting document " + doc.getId() + " to Task", e); // Логирование ошибки преобразования
-                            }
-                        }
-                        Log.d("Firestore", "Loaded " + tasks.size() + " tasks for date, fromCache=" + fromCache); // Логирование количества загруженных задач
-                        taskAdapter.setCalendarTasks(tasks); // Обновление адаптера списком задач
-                    } else {
-                        taskAdapter.setCalendarTasks(new ArrayList<>()); // Установка пустого списка, если данных нет
-                    }
-                    updateProgressBarUI(); // Обновление индикатора прогресса
-                });
+    // Обработка ошибки слушателя задач
+    private void handleTasksSnapshotError(Exception error) {
+        Log.e("FirestoreError", "Error loading tasks: ", error); // Логирование ошибки
+        if (error.getMessage() != null && error.getMessage().contains("UNAVAILABLE")) {
+            Toast.makeText(this, "Нет интернета. Используем локальные данные.", Toast.LENGTH_LONG).show(); // Уведомление об оффлайн-режиме
+        } else {
+            Toast.makeText(this, "Ошибка загрузки задач", Toast.LENGTH_LONG).show(); // Уведомление об ошибке
+        }
     }
 
-    // Загрузка всех задач пользователя из Firestore
-    private void loadAllTasks() {
-        Log.d("Firestore", "Loading all tasks for user: " + userId); // Логирование запроса
-        // Запрос всех задач пользователя с сортировкой по дате
-        db.collection("tasks")
-                .whereEqualTo("userId", userId) // Фильтр по ID пользователя
-                .orderBy("dateTime", Query.Direction.ASCENDING) // Сортировка по дате (возрастание)
-                .addSnapshotListener((querySnapshot, error) -> {
-                    if (error != null) { // Проверка на ошибки
-                        Log.e("FirestoreError", "Error loading all tasks: ", error); // Логирование ошибки
-                        if (error.getMessage() != null && error.getMessage().contains("UNAVAILABLE")) {
-                            Toast.makeText(this, "Нет интернета. Используем локальные данные.", Toast.LENGTH_LONG).show(); // Уведомление об оффлайн-режиме
-                        } else {
-                            Toast.makeText(this, "Ошибка загрузки всех задач", Toast.LENGTH_LONG).show(); // Уведомление об ошибке
-                        }
-                        return;
-                    }
+    // Перерисовка текущего вида (календарь или список) из индекса задач
+    private void refreshDisplayedTasks() {
+        if (isCalendarViewVisible) {
+            loadTasksForDate(selectedCalendarDate);
+        } else {
+            loadAllTasks();
+        }
+    }
 
-                    if (taskAdapter == null) return; // Выход, если адаптер не инициализирован
-                    List<Task> allTasks = new ArrayList<>(); // Список для хранения всех задач
-                    if (querySnapshot != null) { // Проверка наличия данных
-                        boolean fromCache = querySnapshot.getMetadata().isFromCache(); // Проверка, из кэша ли данные
-                        if (fromCache) {
-                            Toast.makeText(this, "Загружено из кэша (оффлайн)", Toast.LENGTH_SHORT).show(); // Уведомление о кэшированных данных
-                        }
-                        // Обработка каждого документа в результате запроса
-                        for (QueryDocumentSnapshot doc : querySnapshot) {
-                            try {
-                                Task task = doc.toObject(Task.class); // Преобразование документа в объект Task
-                                task.setId(doc.getId()); // Установка ID задачи
-                                allTasks.add(task); // Добавление задачи в список
-                            } catch (Exception e) {
-                                Log.e("Firestore", "Error converting document " + doc.getId() + " to Task", e); // Логирование ошибки преобразования
-                            }
-                        }
-                        Log.d("Firestore", "Loaded " + allTasks.size() + " total tasks, fromCache=" + fromCache); // Логирование количества загруженных задач
-                        Map<Date, List<Task>> groupedTasks = groupTasksByDate(allTasks); // Группировка задач по датам
-                        List<Object> displayList = createDisplayList(groupedTasks); // Создание списка для отображения
-                        taskAdapter.setAllTasksList(displayList); // Обновление адаптера списком задач
-                    } else {
-                        taskAdapter.setAllTasksList(new ArrayList<>()); // Установка пустого списка, если данных нет
-                    }
-                    updateProgressBarUI(); // Обновление индикатора прогресса
-                });
+    // Выборка задач за определенную дату из локального хранилища
+    private void loadTasksForDate(Calendar selectedDate) {
+        if (selectedDate == null || taskAdapter == null) return; // Выход, если дата не выбрана или адаптер не готов
+
+        long[] day = dayRange(selectedDate); // Диапазон [начало дня, начало следующего дня)
+        queryStore(() -> taskStore.tasksBetween(userId, day[0], day[1]), tasks -> {
+            Log.d("TaskStore", "Tasks for date " + selectedDate.getTime() + ": " + tasks.size()); // Логирование выборки
+            taskAdapter.setCalendarTasks(tasks); // Обновление адаптера списком задач; прогресс адаптер передаст сам
+        });
     }
 
-    // Группировка задач по датам для отображения в списке
-    private Map<Date, List<Task>> groupTasksByDate(List<Task> tasks) {
-        Map<Date, List<Task>> grouped = new LinkedHashMap<>(); // Карта для хранения задач по датам
-        Calendar cal = Calendar.getInstance(); // Календарь для обработки дат
-        for (Task task : tasks) { // Перебор всех задач
-            if (task.getDateTime() == null) continue; // Пропуск задач без даты
-            cal.setTime(task.getDateTime()); // Установка времени задачи
-            cal.set(Calendar.HOUR_OF_DAY, 0); // Обнуление времени до начала дня
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-            Date dateOnly = cal.getTime(); // Получение даты без времени
-            grouped.computeIfAbsent(dateOnly, k -> new ArrayList<>()).add(task); // Добавление задачи в группу по дате
-        }
-        return grouped; // Возврат сгруппированных задач
+    // Выборка из локального хранилища задач интервала загруженных страниц, сгруппированных по датам.
+    // Хранилище держит и задачи других месяцев и страниц, поэтому список ограничен тем, что загрузил listPager:
+    // прокрутка к краю списка по-прежнему подгружает следующую страницу
+    private void loadAllTasks() {
+        if (taskAdapter == null || listPager == null) return; // Выход, если адаптер не инициализирован
+        long[] range = listPager.getLoadedRange();
+        if (range == null) return; // Страницы не загружаются (режим календаря)
+        queryStore(() -> taskStore.tasksBetween(userId, range[0], range[1]), tasks -> { // Задачи уже отсортированы по дате
+            Log.d("TaskStore", "Tasks of loaded pages: " + tasks.size() + ", pages=" + listPager.getPageCount()); // Логирование выборки
+            if (scrollToAnchorPending && !tasks.isEmpty()) {
+                scrollToAnchorPending = false;
+                taskAdapter.setAllTasks(tasks, this::scrollListToAnchor); // Прокрутка после применения строк
+            } else {
+                taskAdapter.setAllTasks(tasks); // Заголовки дат и строки адаптер построит в фоне; прогресс передаст сам
+            }
+        });
     }
 
-    // Создание списка для отображения с заголовками дат
-    private List<Object> createDisplayList(Map<Date, List<Task>> groupedTasks) {
-        List<Object> displayList = new ArrayList<>(); // Список для отображения
-        List<Date> sortedDates = new ArrayList<>(groupedTasks.keySet()); // Список всех дат
-        Collections.sort(sortedDates); // Сортировка дат по возрастанию
-        for (Date date : sortedDates) { // Перебор отсортированных дат
-            displayList.add(listDateFormatter.format(date)); // Добавление форматированной даты как заголовка
-            displayList.addAll(groupedTasks.get(date)); // Добавление всех задач за эту дату
-        }
-        return displayList; // Возврат списка для отображения
+    // Прокрутка списка к опорной дате страниц (сегодняшнему дню)
+    private void scrollListToAnchor() {
+        if (isCalendarViewVisible || listPager.getAnchor() == null) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) taskRecyclerView.getLayoutManager();
+        if (layoutManager == null) return;
+        layoutManager.scrollToPositionWithOffset(taskAdapter.positionAtOrAfter(listPager.getAnchor().getTime()), 0);
+    }
+
+    // Выборка из хранилища в его потоке. Применяется только результат последней выборки
+    private void queryStore(Supplier<List<Task>> query, Consumer<List<Task>> onResult) {
+        final int generation = ++storeReadGeneration;
+        storeReadPending = true;
+        STORE_EXECUTOR.execute(() -> {
+            long started = System.nanoTime();
+            List<Task> tasks = query.get();
+            long micros = (System.nanoTime() - started) / 1000;
+            runOnUiThread(() -> {
+                if (generation != storeReadGeneration || isDestroyed()) return; // Есть более новая выборка
+                storeReadPending = false;
+                Log.d("TaskStore", "Query returned " + tasks.size() + " tasks in " + micros + " us"); // Время выборки
+                onResult.accept(tasks);
+            });
+        });
     }
 
     // Отображение диалога для добавления новой задачи
     private void showAddTaskDialog() {
         Log.d("AddTaskDialog", "Opening add task dialog"); // Логирование открытия диалога
         AlertDialog.Builder builder = new AlertDialog.Builder(this); // Создание конструктора диалога
+        long trace = UiTrace.begin(UiTrace.INFLATE_ADD_TASK);
         View dialogView = getLayoutInflater().inflate(R.layout.bottom_sheet_add_task, null); // Загрузка макета диалога
+        UiTrace.end(UiTrace.INFLATE_ADD_TASK, trace);
         builder.setView(dialogView); // Установка макета в диалог
 
         // Инициализация элементов пользовательского интерфейса диалога
@@ -455,30 +750,24 @@ public class MainMenuActivity extends AppCompatActivity {
             Log.d("AddTaskDialog", "Adding task: description=" + description + ", dueDateTime=" + dueDateTime + ", reminderTime=" + (reminderTime != null ? reminderTime : "null")); // Логирование данных задачи
 
             // Создание объекта задачи для сохранения в Firestore
-            Map<String, Object> task = new HashMap<>();
-            task.put("userId", userId); // ID пользователя
-            task.put("description", description); // Описание задачи
-            task.put("dateTime", dueDateTime); // Время выполнения
-            task.put("isCompleted", false); // Статус выполнения
-            task.put("isExpanded", false); // Статус развернутости
-            task.put("reminderTime", reminderTime); // Время напоминания
-
-            // Сохранение задачи в Firestore
-            db.collection("tasks").add(task)
-                    .addOnSuccessListener(doc -> {
-                        String taskId = doc.getId(); // Получение ID новой задачи
-                        Log.d("AddTaskDialog", "Task added successfully, taskId=" + taskId); // Логирование успеха
-                        if (reminderTime != null) { // Если есть напоминание
-                            scheduleNotification(taskId, reminderTime, description); // Планирование уведомления
-                        }
-                        dialog.dismiss(); // Закрытие диалога
-                        Toast.makeText(MainMenuActivity.this, "Задача добавлена", Toast.LENGTH_SHORT).show(); // Уведомление об успехе
-                        updateView(); // Обновление интерфейса
-                    })
+            Map<String, Object> task = TaskCodec.newTask(userId, description, dueDateTime, reminderTime);
+
+            // Сохранение задачи через журнал записей: ID документа создается на клиенте, поэтому повторная отправка идемпотентна
+            DocumentReference doc = db.collection("tasks").document();
+            String taskId = doc.getId(); // ID новой задачи
+            WriteOutbox.get(this).set("add-task", doc, task)
+                    .addOnSuccessListener(aVoid -> Log.d("AddTaskDialog", "Task added successfully, taskId=" + taskId)) // Логирование подтверждения
                     .addOnFailureListener(e -> {
                         Log.e("FirestoreError", "Error adding task: ", e); // Логирование ошибки
                         Toast.makeText(MainMenuActivity.this, "Ошибка добавления задачи", Toast.LENGTH_SHORT).show(); // Уведомление об ошибке
                     });
+            // Задача сохранена в журнале и применена к локальному кэшу — ответа сервера не ждем
+            if (reminderTime != null) { // Если есть напоминание
+                scheduleNotification(taskId, reminderTime, description); // Планирование уведомления
+            }
+            dialog.dismiss(); // Закрытие диалога
+            Toast.makeText(MainMenuActivity.this, "Задача добавлена", Toast.LENGTH_SHORT).show(); // Уведомление об успехе
+            updateView(); // Обновление интерфейса
         });
 
         dialog.show(); // Отображение диалога добавления задачи
@@ -4,6 +4,7 @@ package com.example.todolist;
 import android.app.DatePickerDialog;
 import android.app.TimePickerDialog;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -12,13 +13,13 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.Map;
 
 public class SettingsActivity extends AppCompatActivity {
@@ -52,8 +53,24 @@ public class SettingsActivity extends AppCompatActivity {
         logoutButton = findViewById(R.id.logoutButton);
         BottomNavigationView bottomNav = findViewById(R.id.bottomNavigationView);
 
+        // Настройки отображения: MainMenuActivity читает их при создании
+        SharedPreferences displayPrefs = getSharedPreferences(MainMenuActivity.DISPLAY_PREFS, MODE_PRIVATE);
+        SwitchCompat flatSubTasksSwitch = findViewById(R.id.flatSubTasksSwitch);
+        flatSubTasksSwitch.setChecked(displayPrefs.getBoolean(MainMenuActivity.KEY_FLAT_SUBTASKS, false));
+        flatSubTasksSwitch.setOnCheckedChangeListener((button, checked) ->
+                displayPrefs.edit().putBoolean(MainMenuActivity.KEY_FLAT_SUBTASKS, checked).apply()); // Подзадачи раскрытых задач — строки общего списка
+        SwitchCompat weightedProgressSwitch = findViewById(R.id.weightedProgressSwitch);
+        weightedProgressSwitch.setChecked(displayPrefs.getBoolean(MainMenuActivity.KEY_WEIGHTED_PROGRESS, false));
+        weightedProgressSwitch.setOnCheckedChangeListener((button, checked) ->
+                displayPrefs.edit().putBoolean(MainMenuActivity.KEY_WEIGHTED_PROGRESS, checked).apply()); // Невыполненная задача засчитывается долей выполненных подзадач
+
         // Обработчик нажатия на кнопку выхода
         logoutButton.setOnClickListener(v -> {
+            WriteOutbox outbox = WriteOutbox.get(this);
+            if (outbox.getDepth() > 0) { // Неотправленные изменения остаются в журнале пользователя до следующего входа
+                Log.w("WriteOutbox", "Signing out with unsent operations " + outbox.describe());
+                Toast.makeText(this, "Не отправлено изменений: " + outbox.getDepth() + ". Они будут отправлены при следующем входе", Toast.LENGTH_LONG).show();
+            }
             FirebaseAuth.getInstance().signOut(); // Выход из учетной записи
             Intent intent = new Intent(SettingsActivity.this, MainActivity.class);
             intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK); // Очистка стека активностей
@@ -88,7 +105,9 @@ public class SettingsActivity extends AppCompatActivity {
     // Метод отображения диалога добавления задачи
     private void showAddTaskDialog() {
         BottomSheetDialog bottomSheetDialog = new BottomSheetDialog(this); // Создание диалога BottomSheet
+        long trace = UiTrace.begin(UiTrace.INFLATE_ADD_TASK);
         View dialogView = getLayoutInflater().inflate(R.layout.bottom_sheet_add_task, null); // Загрузка макета диалога
+        UiTrace.end(UiTrace.INFLATE_ADD_TASK, trace);
         bottomSheetDialog.setContentView(dialogView);
 
         // Инициализация элементов диалога
@@ -157,27 +176,20 @@ public class SettingsActivity extends AppCompatActivity {
             }
 
             // Создание объекта задачи для Firestore
-            Map<String, Object> task = new HashMap<>();
-            task.put("userId", userId);
-            task.put("description", description);
-            task.put("dateTime", calendar.getTime());
-            task.put("isCompleted", false);
-            task.put("isExpanded", false);
-
-            // Сохранение задачи в Firestore
-            db.collection("tasks").add(task)
-                    .addOnSuccessListener(doc -> {
-                        bottomSheetDialog.dismiss(); // Закрытие диалога
-                        Toast.makeText(this, "Задача добавлена", Toast.LENGTH_SHORT).show();
-                        // Переход в MainMenuActivity после добавления задачи
-                        Intent intent = new Intent(SettingsActivity.this, MainMenuActivity.class);
-                        startActivity(intent);
-                        finish();
-                    })
+            Map<String, Object> task = TaskCodec.newTask(userId, description, calendar.getTime());
+
+            // Сохранение задачи через журнал записей (ID документа создается на клиенте)
+            WriteOutbox.get(this).set("add-task", db.collection("tasks").document(), task)
                     .addOnFailureListener(e -> {
                         Log.e("FirestoreError", "Ошибка добавления задачи: " + e.getMessage());
-                        Toast.makeText(this, "Ошибка добавления задачи", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getApplicationContext(), "Ошибка добавления задачи", Toast.LENGTH_SHORT).show();
                     });
+            bottomSheetDialog.dismiss(); // Закрытие диалога
+            Toast.makeText(this, "Задача добавлена", Toast.LENGTH_SHORT).show();
+            // Переход в MainMenuActivity после добавления задачи
+            Intent intent = new Intent(SettingsActivity.this, MainMenuActivity.class);
+            startActivity(intent);
+            finish();
         });
 
         bottomSheetDialog.show(); // Отображение диалога
@@ -0,0 +1,176 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Владелец всех snapshot-слушателей экрана. Каждый запрос регистрируется под ключом:
+// повторная регистрация с тем же ключом заменяет предыдущий запрос, а pause/resume
+// снимают и восстанавливают слушатели вместе с жизненным циклом активности.
+public class SnapshotSubscriptionManager {
+    private static final String TAG = "Subscriptions";
+
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>(); // Подписки по ключу
+    private boolean paused = false; // Сняты ли слушатели (активность остановлена)
+    private int totalAttachCount = 0; // Сколько раз слушатели подключались
+    private int totalDetachCount = 0; // Сколько раз слушатели отключались
+
+    // Слушатель, которому нужно освободить свое состояние, когда его подписку удаляют насовсем
+    public interface Disposable {
+        void dispose();
+    }
+
+    // Регистрация запроса под ключом с заменой предыдущего запроса с тем же ключом
+    public void replace(String key, Query query, EventListener<QuerySnapshot> listener) {
+        replace(key, query, MetadataChanges.EXCLUDE, listener);
+    }
+
+    public void replace(String key, Query query, MetadataChanges metadataChanges, EventListener<QuerySnapshot> listener) {
+        remove(key); // Старый запрос под этим ключом больше не нужен
+        Subscription subscription = new Subscription(query, metadataChanges, listener);
+        subscriptions.put(key, subscription);
+        if (!paused) {
+            attach(subscription);
+        }
+        Log.d(TAG, "Registered '" + key + "' " + describe());
+    }
+
+    // Замена запроса подписки с сохранением ее слушателя: состояние слушателя не освобождается,
+    // первый снимок нового запроса приходит в тот же слушатель
+    public void requery(String key, Query query) {
+        Subscription old = subscriptions.get(key);
+        if (old == null) return;
+        detach(old);
+        Subscription subscription = new Subscription(query, old.metadataChanges, old.listener);
+        subscriptions.put(key, subscription);
+        if (!paused) {
+            attach(subscription);
+        }
+        Log.d(TAG, "Requeried '" + key + "' " + describe());
+    }
+
+    // Удаление подписки по ключу
+    public void remove(String key) {
+        Subscription subscription = subscriptions.remove(key);
+        if (subscription != null) {
+            detach(subscription);
+            dispose(subscription);
+        }
+    }
+
+    // Удаление всех подписок, ключ которых начинается с prefix
+    public void removeByPrefix(String prefix) {
+        Iterator<Map.Entry<String, Subscription>> iterator = subscriptions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Subscription> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                detach(entry.getValue());
+                iterator.remove();
+                dispose(entry.getValue());
+            }
+        }
+    }
+
+    public boolean contains(String key) {
+        return subscriptions.containsKey(key);
+    }
+
+    // Ключи зарегистрированных подписок с заданным префиксом
+    public List<String> keysWithPrefix(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (String key : subscriptions.keySet()) {
+            if (key.startsWith(prefix)) keys.add(key);
+        }
+        return keys;
+    }
+
+    // Снятие всех слушателей с сохранением запросов (onStop)
+    public void pause() {
+        if (paused) return;
+        paused = true;
+        for (Subscription subscription : subscriptions.values()) {
+            detach(subscription);
+        }
+        Log.d(TAG, "Paused " + describe());
+    }
+
+    // Повторное подключение сохраненных запросов (onStart)
+    public void resume() {
+        if (!paused) return;
+        paused = false;
+        for (Subscription subscription : subscriptions.values()) {
+            attach(subscription);
+        }
+        Log.d(TAG, "Resumed " + describe());
+    }
+
+    // Удаление всех подписок (onDestroy); состояние слушателей не освобождается — экран уничтожается целиком
+    public void clear() {
+        for (Subscription subscription : subscriptions.values()) {
+            detach(subscription);
+        }
+        subscriptions.clear();
+        Log.d(TAG, "Cleared " + describe());
+    }
+
+    // --- Счетчики ---
+    // Количество слушателей, подключенных к Firestore прямо сейчас
+    public int getActiveListenerCount() {
+        int active = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.registration != null) active++;
+        }
+        return active;
+    }
+
+    public int getSubscriptionCount() { return subscriptions.size(); } // Зарегистрированные запросы (включая приостановленные)
+    public int getTotalAttachCount() { return totalAttachCount; }
+    public int getTotalDetachCount() { return totalDetachCount; }
+
+    public String describe() {
+        return "[active=" + getActiveListenerCount() + ", registered=" + subscriptions.size()
+                + ", attached=" + totalAttachCount + ", detached=" + totalDetachCount + "]";
+    }
+
+    private void attach(Subscription subscription) {
+        if (subscription.registration != null) return;
+        subscription.registration = subscription.query.addSnapshotListener(subscription.metadataChanges, subscription.listener);
+        totalAttachCount++;
+    }
+
+    private static void dispose(Subscription subscription) {
+        if (subscription.listener instanceof Disposable) {
+            ((Disposable) subscription.listener).dispose();
+        }
+    }
+
+    private void detach(Subscription subscription) {
+        if (subscription.registration == null) return;
+        subscription.registration.remove();
+        subscription.registration = null;
+        totalDetachCount++;
+    }
+
+    private static final class Subscription {
+        final Query query;
+        final MetadataChanges metadataChanges;
+        final EventListener<QuerySnapshot> listener;
+        ListenerRegistration registration; // null, пока слушатель не подключен
+
+        Subscription(Query query, MetadataChanges metadataChanges, EventListener<QuerySnapshot> listener) {
+            this.query = query;
+            this.metadataChanges = metadataChanges;
+            this.listener = listener;
+        }
+    }
+}
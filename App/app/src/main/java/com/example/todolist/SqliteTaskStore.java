@@ -0,0 +1,241 @@
+package com.example.todolist;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Хранилище задач на SQLite. Выборки по дате идут по индексу (user_id, date_time),
+// подзадачи — по индексу task_id, поэтому время чтения не зависит от общего числа задач.
+// Пакеты синхронизации пишутся одной транзакцией. Даты хранятся в миллисекундах, NULL — без значения.
+public class SqliteTaskStore extends SQLiteOpenHelper implements TaskStore {
+    private static final String DATABASE_NAME = "tasks.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TASKS = "tasks";
+    private static final String SUBTASKS = "subtasks";
+    private static final String SYNCED = "synced_subtasks"; // Задачи, чьи подзадачи уже синхронизированы (в том числе пустые)
+    private static final String TASK_COLUMNS = "id, user_id, description, date_time, is_completed, reminder_time";
+
+    public SqliteTaskStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true); // Чтения не ждут записи синхронизации
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TASKS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "user_id TEXT NOT NULL, "
+                + "description TEXT, "
+                + "date_time INTEGER NOT NULL, "
+                + "is_completed INTEGER NOT NULL DEFAULT 0, "
+                + "reminder_time INTEGER)");
+        db.execSQL("CREATE INDEX idx_tasks_user_time ON " + TASKS + " (user_id, date_time)");
+        db.execSQL("CREATE TABLE " + SUBTASKS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "task_id TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "description TEXT, "
+                + "is_completed INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_subtasks_task ON " + SUBTASKS + " (task_id, position)");
+        db.execSQL("CREATE TABLE " + SYNCED + " (task_id TEXT PRIMARY KEY)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Хранилище — копия данных Firestore: при смене схемы пересоздается и заполняется синхронизацией
+        db.execSQL("DROP TABLE IF EXISTS " + TASKS);
+        db.execSQL("DROP TABLE IF EXISTS " + SUBTASKS);
+        db.execSQL("DROP TABLE IF EXISTS " + SYNCED);
+        onCreate(db);
+    }
+
+    // --- Чтение ---
+
+    @Override
+    public List<Task> tasksBetween(String userId, long fromMillis, long toMillis) {
+        if (toMillis <= fromMillis) return new ArrayList<>();
+        return queryTasks("SELECT " + TASK_COLUMNS + " FROM " + TASKS
+                        + " WHERE user_id = ? AND date_time >= ? AND date_time < ? ORDER BY date_time, id",
+                userId, String.valueOf(fromMillis), String.valueOf(toMillis));
+    }
+
+    @Nullable
+    @Override
+    public Task getTask(String taskId) {
+        List<Task> tasks = queryTasks("SELECT " + TASK_COLUMNS + " FROM " + TASKS + " WHERE id = ?", taskId);
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
+
+    @Nullable
+    @Override
+    public List<SubTask> subTasksOf(String taskId) {
+        SQLiteDatabase db = getReadableDatabase();
+        if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + SYNCED + " WHERE task_id = ?", new String[]{taskId}) == 0) {
+            return null; // Подзадачи задачи еще не приходили
+        }
+        List<SubTask> subTasks = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT id, description, is_completed FROM " + SUBTASKS
+                + " WHERE task_id = ? ORDER BY position", new String[]{taskId})) {
+            while (cursor.moveToNext()) {
+                SubTask subTask = new SubTask(cursor.getString(1), cursor.getInt(2) != 0);
+                subTask.setSubTaskId(cursor.getString(0));
+                subTasks.add(subTask);
+            }
+        }
+        return subTasks;
+    }
+
+    private List<Task> queryTasks(String sql, String... args) {
+        List<Task> tasks = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Task task = new Task();
+                task.setId(cursor.getString(0));
+                task.setUserId(cursor.getString(1));
+                task.setDescription(cursor.getString(2));
+                task.setDateTime(new Date(cursor.getLong(3)));
+                task.setCompleted(cursor.getInt(4) != 0);
+                task.setReminderTime(cursor.isNull(5) ? null : new Date(cursor.getLong(5)));
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    // --- Синхронизация ---
+
+    @Override
+    public void upsertTasks(List<Task> tasks) {
+        if (tasks.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = compileUpsert(db);
+            for (Task task : tasks) {
+                bindTask(insert, task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void deleteTasks(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String taskId : taskIds) {
+                deleteTask(db, taskId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void replaceRange(String userId, long fromMillis, long toMillis, List<Task> tasks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            Set<String> current = new HashSet<>();
+            for (Task task : tasks) current.add(task.getId());
+            try (Cursor cursor = db.rawQuery("SELECT id FROM " + TASKS + " WHERE user_id = ? AND date_time >= ? AND date_time < ?",
+                    new String[]{userId, String.valueOf(fromMillis), String.valueOf(toMillis)})) {
+                List<String> stale = new ArrayList<>();
+                while (cursor.moveToNext()) {
+                    if (!current.contains(cursor.getString(0))) stale.add(cursor.getString(0));
+                }
+                for (String taskId : stale) {
+                    deleteTask(db, taskId); // Задачи нет в полном результате — удалена или перенесена
+                }
+            }
+            SQLiteStatement insert = compileUpsert(db);
+            for (Task task : tasks) {
+                bindTask(insert, task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void replaceSubTasks(String taskId, List<SubTask> subTasks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(SUBTASKS, "task_id = ?", new String[]{taskId});
+            SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + SUBTASKS
+                    + " (id, task_id, position, description, is_completed) VALUES (?, ?, ?, ?, ?)");
+            int position = 0;
+            for (SubTask subTask : subTasks) {
+                if (subTask.getSubTaskId() == null) continue; // Локальная подзадача без документа
+                insert.clearBindings();
+                insert.bindString(1, subTask.getSubTaskId());
+                insert.bindString(2, taskId);
+                insert.bindLong(3, position++);
+                bindNullableString(insert, 4, subTask.getDescription());
+                insert.bindLong(5, subTask.isCompleted() ? 1 : 0);
+                insert.executeInsert();
+            }
+            ContentValues synced = new ContentValues();
+            synced.put("task_id", taskId);
+            db.insertWithOnConflict(SYNCED, null, synced, SQLiteDatabase.CONFLICT_IGNORE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void deleteTask(SQLiteDatabase db, String taskId) {
+        String[] args = {taskId};
+        db.delete(TASKS, "id = ?", args);
+        db.delete(SUBTASKS, "task_id = ?", args);
+        db.delete(SYNCED, "task_id = ?", args);
+    }
+
+    private static SQLiteStatement compileUpsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TASKS + " (" + TASK_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void bindTask(SQLiteStatement insert, Task task) {
+        if (!TaskIndex.isIndexable(task) || task.getUserId() == null) return; // Задачи без ID, даты или владельца не хранятся
+        insert.clearBindings();
+        insert.bindString(1, task.getId());
+        insert.bindString(2, task.getUserId());
+        bindNullableString(insert, 3, task.getDescription());
+        insert.bindLong(4, task.getDateTime().getTime());
+        insert.bindLong(5, task.isCompleted() ? 1 : 0);
+        if (task.getReminderTime() != null) {
+            insert.bindLong(6, task.getReminderTime().getTime());
+        } else {
+            insert.bindNull(6);
+        }
+        insert.executeInsert();
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, @Nullable String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+}
@@ -12,6 +12,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.firestore.FirebaseFirestore;
@@ -20,61 +22,124 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskAdapter.SubTaskViewHolder> {
+    static final int VIEW_TYPE_SUBTASK = 0; // Единственный тип строки; строки делятся между списками через общий пул
 
-    private List<SubTask> subTaskList;
+    private final AsyncListDiffer<SubTaskRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK); // Дифф списков в фоновом потоке
     private final Runnable updateParentProgressCallback;
     private final Runnable updateParentUICallback;
     private final Context context;
     private final FirebaseFirestore db;
     private String taskId; // ID родительской задачи
+    private SubTaskViewPool viewPool; // Запас готовых разметок; null — разметка создается при необходимости
+    private final WriteOutbox outbox; // Журнал записей до подтверждения сервером
+    private final CoalescingWriteQueue writeQueue; // Общая очередь записей статусов: переключения во всех списках уходят одним пакетом
 
-    public SubTaskAdapter(List<SubTask> subTaskList, Runnable updateParentProgressCallback, Context context, String taskId, Runnable updateParentUICallback) {
-        this.subTaskList = subTaskList != null ? new ArrayList<>(subTaskList) : new ArrayList<>();
+    // Строки подзадач сравниваются по стабильному ID и по содержимому
+    private static final DiffUtil.ItemCallback<SubTaskRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<SubTaskRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SubTaskRow oldItem, @NonNull SubTaskRow newItem) {
+            return oldItem.getSubTaskId() != null && oldItem.getStableId() == newItem.getStableId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SubTaskRow oldItem, @NonNull SubTaskRow newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    public SubTaskAdapter(List<SubTask> subTaskList, Runnable updateParentProgressCallback, Context context, String taskId,
+                          CoalescingWriteQueue writeQueue, Runnable updateParentUICallback) {
         this.updateParentProgressCallback = updateParentProgressCallback;
         this.updateParentUICallback = updateParentUICallback;
         this.context = context;
         this.db = FirebaseFirestore.getInstance();
+        this.outbox = WriteOutbox.get(context);
+        this.writeQueue = writeQueue;
         this.taskId = taskId;
-        Log.d("SubTaskAdapter", "Constructor for Task ID: " + taskId + ", initial subtasks: " + this.subTaskList.size());
+        setHasStableIds(true); // Стабильные ID строк из ID документов
+        if (subTaskList != null && !subTaskList.isEmpty()) {
+            differ.submitList(toRows(subTaskList));
+        }
+        Log.d("SubTaskAdapter", "Constructor for Task ID: " + taskId + ", initial subtasks: " + (subTaskList != null ? subTaskList.size() : 0));
     }
 
     public void setTaskId(String taskId) {
         String oldTaskId = this.taskId;
         boolean changed = (taskId == null && oldTaskId != null) || (taskId != null && !taskId.equals(oldTaskId));
         if (changed) {
-            Log.d("SubTaskAdapter", "Setting Task ID from " + oldTaskId + " to " + taskId);
             this.taskId = taskId;
-            this.subTaskList.clear(); // Очищаем список при смене родителя
-            notifyDataSetChanged();
+            differ.submitList(null); // Очищаем список при смене родителя (синхронно, без диффа)
         }
     }
 
+    // Модели строк строятся один раз на новый список подзадач, а не при каждой привязке
     public void setSubTasks(List<SubTask> subTasks) {
-        this.subTaskList = subTasks != null ? new ArrayList<>(subTasks) : new ArrayList<>();
-        Log.d("SubTaskAdapter", "Set SubTasks for Task ID: " + taskId + ", new count: " + this.subTaskList.size());
-        notifyDataSetChanged();
+        List<SubTaskRow> newList = toRows(subTasks);
+        differ.submitList(newList); // Перерисуются только изменившиеся строки
         // Не вызываем коллбэки здесь, чтобы избежать лишних обновлений
     }
 
     public List<SubTask> getSubTasks() {
         // Возвращаем копию, чтобы избежать внешних модификаций
-        return new ArrayList<>(subTaskList);
+        List<SubTaskRow> rows = differ.getCurrentList();
+        List<SubTask> subTasks = new ArrayList<>(rows.size());
+        for (SubTaskRow row : rows) {
+            subTasks.add(row.subTask);
+        }
+        return subTasks;
+    }
+
+    // Общий пул строк подзадач: строки создаются из его запаса разметок
+    public void setViewPool(SubTaskViewPool viewPool) {
+        this.viewPool = viewPool;
+    }
+
+    private static List<SubTaskRow> toRows(List<SubTask> subTasks) {
+        List<SubTaskRow> rows = new ArrayList<>(subTasks != null ? subTasks.size() : 0);
+        if (subTasks != null) {
+            for (SubTask subTask : subTasks) {
+                rows.add(new SubTaskRow(subTask));
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getStableId();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE_SUBTASK;
     }
 
     @NonNull
     @Override
     public SubTaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.subtask_item, parent, false);
-        return new SubTaskViewHolder(view);
+        long trace = UiTrace.begin(UiTrace.CREATE_SUBTASK_ROW);
+        try {
+            View view = viewPool != null
+                    ? viewPool.obtainView(parent)
+                    : LayoutInflater.from(parent.getContext()).inflate(R.layout.subtask_item, parent, false);
+            return new SubTaskViewHolder(view);
+        } finally {
+            UiTrace.end(UiTrace.CREATE_SUBTASK_ROW, trace);
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull SubTaskViewHolder holder, int position) {
-        if (position >= 0 && position < subTaskList.size()) {
-            SubTask subTask = subTaskList.get(position);
-            holder.bind(subTask);
+        List<SubTaskRow> rows = differ.getCurrentList();
+        if (position >= 0 && position < rows.size()) {
+            long trace = UiTrace.begin(UiTrace.BIND_SUBTASK_ROW);
+            try {
+                holder.bind(rows.get(position));
+            } finally {
+                UiTrace.end(UiTrace.BIND_SUBTASK_ROW, trace);
+            }
         } else {
-            Log.e("SubTaskAdapter", "Invalid position in onBindViewHolder: " + position + ", size: " + subTaskList.size());
+            Log.e("SubTaskAdapter", "Invalid position in onBindViewHolder: " + position + ", size: " + rows.size());
             // Можно скрыть элемент или показать заглушку
             holder.itemView.setVisibility(View.GONE);
         }
@@ -83,7 +148,7 @@ public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskAdapter.SubTaskV
 
     @Override
     public int getItemCount() {
-        return subTaskList.size();
+        return differ.getCurrentList().size();
     }
 
     // --- Действия с подзадачами ---
@@ -91,87 +156,82 @@ public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskAdapter.SubTaskV
         if (taskId == null || taskId.isEmpty()) {
             Log.e("SubTaskAdapter", "Cannot remove subtask, parent taskId is null or empty."); return;
         }
-        if (position < 0 || position >= subTaskList.size()) {
+        List<SubTaskRow> rows = differ.getCurrentList();
+        if (position < 0 || position >= rows.size()) {
             Log.e("SubTaskAdapter", "Cannot remove subtask, invalid position: " + position); return;
         }
 
-        SubTask subTaskToRemove = subTaskList.get(position);
-        String subTaskId = subTaskToRemove.getSubTaskId();
+        SubTaskRow rowToRemove = rows.get(position);
+        String subTaskId = rowToRemove.getSubTaskId();
 
         if (subTaskId == null || subTaskId.isEmpty()) {
             Log.e("SubTaskAdapter", "Cannot remove subtask, subTaskId is null or empty. Removing from list only.");
             // Если нет ID, удаляем только из списка UI
-            subTaskList.remove(position);
-            notifyItemRemoved(position);
-            if (updateParentUICallback != null) updateParentUICallback.run();
+            removeFromList(rowToRemove);
             return;
         }
 
-        db.collection("tasks").document(taskId).collection("subtasks").document(subTaskId).delete()
-                .addOnSuccessListener(aVoid -> {
-                    Log.d("Firestore", "Подзадача удалена из Firestore: " + subTaskToRemove.getDescription());
-                    // Проверяем, что элемент все еще на той же позиции
-                    if (position < subTaskList.size() && subTaskList.get(position).getSubTaskId().equals(subTaskId)) {
-                        subTaskList.remove(position);
-                        notifyItemRemoved(position);
-                    } else {
-                        // Элемент сместился или удален, ищем по ID
-                        int currentPosition = findSubTaskPosition(subTaskId);
-                        if (currentPosition != -1) {
-                            subTaskList.remove(currentPosition);
-                            notifyItemRemoved(currentPosition);
-                        } else {
-                            notifyDataSetChanged(); // Обновляем весь список, если не нашли
-                        }
-                    }
-                    // Уведомляем родителя об изменении UI
-                    if (updateParentUICallback != null) updateParentUICallback.run();
-                })
+        outbox.delete("delete-subtask", db.collection("tasks").document(taskId).collection("subtasks").document(subTaskId))
+                .addOnSuccessListener(aVoid -> Log.d("Firestore", "Подзадача удалена из Firestore: " + rowToRemove.text))
                 .addOnFailureListener(e -> {
                     Log.e("FirestoreError", "Ошибка удаления подзадачи из Firestore: " + e.getMessage());
                     Toast.makeText(context, "Ошибка удаления подзадачи", Toast.LENGTH_SHORT).show();
                 });
+        // Операция сохранена в журнале — строка убирается сразу; при ошибке подзадачу вернет подписка
+        removeFromList(rowToRemove);
     }
 
-    private void updateSubTaskCompletion(SubTask subTask, boolean isCompleted, int position) {
+    private void updateSubTaskCompletion(SubTaskRow row, boolean isCompleted, int position) {
         if (taskId == null || taskId.isEmpty()) {
             Log.e("SubTaskAdapter", "Cannot update subtask, parent taskId is null or empty.");
             notifyItemChanged(position); // Откатываем UI
             return;
         }
-        String subTaskId = subTask.getSubTaskId();
+        String subTaskId = row.getSubTaskId();
         if (subTaskId == null || subTaskId.isEmpty()) {
             Log.e("SubTaskAdapter", "Cannot update subtask, subTaskId is null or empty.");
             notifyItemChanged(position); // Откатываем UI
             return;
         }
 
-        // Оптимистичное обновление UI
-        subTask.setCompleted(isCompleted);
-        notifyItemChanged(position);
+        // Оптимистичное обновление UI новой строкой (объекты подзадач в кэше не меняются); родитель обновляется сразу
+        replaceInList(subTaskId, isCompleted, updateParentUICallback);
 
-        db.collection("tasks").document(taskId).collection("subtasks").document(subTaskId)
-                .update("isCompleted", isCompleted)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d("Firestore", "Статус подзадачи обновлен в Firestore: " + subTask.getDescription() + " -> " + isCompleted);
-                    // Уведомляем родителя об изменении UI
-                    if (updateParentUICallback != null) updateParentUICallback.run();
-                })
-                .addOnFailureListener(e -> {
+        // Запись откладывается: быстрые повторные переключения объединяются в одно итоговое значение
+        writeQueue.set(db.collection("tasks").document(taskId).collection("subtasks").document(subTaskId),
+                SubTaskCodec.FIELD_IS_COMPLETED, isCompleted, row.completed, e -> {
                     Log.e("FirestoreError", "Ошибка обновления статуса подзадачи в Firestore: " + e.getMessage());
                     Toast.makeText(context, "Ошибка обновления статуса", Toast.LENGTH_SHORT).show();
                     // Откатываем изменение в UI
-                    subTask.setCompleted(!isCompleted);
-                    notifyItemChanged(position);
-                    if (updateParentUICallback != null) updateParentUICallback.run();
+                    replaceInList(subTaskId, !isCompleted, updateParentUICallback);
                 });
     }
 
+    // Замена строки подзадачи копией с другим статусом; onCommitted вызывается после применения списка
+    private void replaceInList(String subTaskId, boolean isCompleted, Runnable onCommitted) {
+        int position = findSubTaskPosition(subTaskId);
+        if (position == -1) return;
+        List<SubTaskRow> newList = new ArrayList<>(differ.getCurrentList());
+        SubTask old = newList.get(position).subTask;
+        SubTask updated = new SubTask(old.getDescription(), isCompleted);
+        updated.setSubTaskId(old.getSubTaskId());
+        newList.set(position, new SubTaskRow(updated));
+        differ.submitList(newList, onCommitted);
+    }
+
+    // Удаление подзадачи из отображаемого списка через дифф; родитель узнает об изменении после применения списка
+    private void removeFromList(SubTaskRow row) {
+        List<SubTaskRow> newList = new ArrayList<>(differ.getCurrentList());
+        newList.remove(row);
+        differ.submitList(newList, updateParentUICallback);
+    }
+
     // Вспомогательный метод для поиска подзадачи по ID
     private int findSubTaskPosition(String subTaskId) {
+        List<SubTaskRow> rows = differ.getCurrentList();
         if (subTaskId == null) return -1;
-        for (int i = 0; i < subTaskList.size(); i++) {
-            if (subTaskId.equals(subTaskList.get(i).getSubTaskId())) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (subTaskId.equals(rows.get(i).getSubTaskId())) {
                 return i;
             }
         }
@@ -180,10 +240,13 @@ public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskAdapter.SubTaskV
 
 
     // --- ViewHolder для подзадачи ---
-    class SubTaskViewHolder extends RecyclerView.ViewHolder {
+    // Статический: строка из общего пула может быть привязана к списку другой задачи,
+    // поэтому адаптер берется из текущей привязки, а не из места создания
+    static class SubTaskViewHolder extends RecyclerView.ViewHolder {
         private CheckBox checkBox;
         private TextView descriptionTextView;
         private ImageButton deleteButton;
+        private boolean bindingCheckBox = false; // Чекбокс меняется программно
 
         public SubTaskViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -192,34 +255,36 @@ public class SubTaskAdapter extends RecyclerView.Adapter<SubTaskAdapter.SubTaskV
             deleteButton = itemView.findViewById(R.id.deleteSubTaskButton);
 
             deleteButton.setOnClickListener(v -> {
-                int pos = getAdapterPosition();
-                if (pos != RecyclerView.NO_POSITION) {
-                    removeSubTask(pos);
+                SubTaskAdapter adapter = (SubTaskAdapter) getBindingAdapter();
+                int pos = getBindingAdapterPosition();
+                if (adapter != null && pos != RecyclerView.NO_POSITION) {
+                    adapter.removeSubTask(pos);
+                }
+            });
+
+            // Слушатель создается один раз; строка берется из актуального списка
+            checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                if (bindingCheckBox) return;
+                SubTaskAdapter adapter = (SubTaskAdapter) getBindingAdapter();
+                int position = getBindingAdapterPosition();
+                if (adapter == null || position == RecyclerView.NO_POSITION) return;
+                List<SubTaskRow> rows = adapter.differ.getCurrentList();
+                if (position < rows.size()) {
+                    adapter.updateSubTaskCompletion(rows.get(position), isChecked, position);
                 }
             });
         }
 
-        public void bind(SubTask subTask) {
-            descriptionTextView.setText(subTask.getDescription());
+        public void bind(SubTaskRow row) {
+            descriptionTextView.setText(row.text);
             // Зачеркивание текста
-            descriptionTextView.setPaintFlags(subTask.isCompleted()
+            descriptionTextView.setPaintFlags(row.completed
                     ? descriptionTextView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG // Используем Paint
                     : descriptionTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG)); // Используем Paint
 
-            // Снимаем слушатель перед установкой состояния
-            checkBox.setOnCheckedChangeListener(null);
-            checkBox.setChecked(subTask.isCompleted());
-            // Устанавливаем слушатель
-            checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                int position = getAdapterPosition();
-                if (position != RecyclerView.NO_POSITION) {
-                    // Получаем актуальный объект из списка
-                    if (position < subTaskList.size()){ // Доп. проверка
-                        SubTask currentSubTask = subTaskList.get(position);
-                        updateSubTaskCompletion(currentSubTask, isChecked, position);
-                    }
-                }
-            });
+            bindingCheckBox = true;
+            checkBox.setChecked(row.completed);
+            bindingCheckBox = false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ограниченный кэш подзадач по ID задачи с вытеснением давно не использованных записей (LRU).
+// Размер ограничен и числом записей, и оценкой занимаемой памяти. Записи задач, привязанных к строкам
+// на экране, не вытесняются. О вытеснении сообщается слушателю, чтобы снять подписку на подзадачи задачи.
+public class SubTaskCache {
+    private static final String TAG = "SubTaskCache";
+    static final int DEFAULT_MAX_ENTRIES = 200; // Максимум задач в кэше
+    static final long DEFAULT_MAX_BYTES = 256 * 1024; // Максимум оценочного объема кэша
+
+    // Оценка размера объектов в байтах (заголовки объектов, ссылки, символы UTF-16)
+    private static final int ENTRY_OVERHEAD_BYTES = 96; // Запись карты, ключ, ArrayList
+    private static final int SUBTASK_OVERHEAD_BYTES = 56; // Объект SubTask и ссылка на него в списке
+    private static final int STRING_OVERHEAD_BYTES = 40; // Объект String и массив символов
+
+    // Может ли запись быть вытеснена (задача не отображается на экране)
+    public interface EvictionPolicy {
+        boolean isPinned(String taskId);
+    }
+
+    // Получатель вытесненных записей
+    public interface EvictionListener {
+        void onEvicted(String taskId);
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Порядок доступа: первая — самая старая
+    private EvictionPolicy evictionPolicy;
+    private EvictionListener evictionListener;
+    private long currentBytes = 0;
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int evictionCount = 0;
+
+    public SubTaskCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public SubTaskCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    public void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    // Подзадачи задачи или null, если их нет в кэше
+    public List<SubTask> get(String taskId) {
+        Entry entry = taskId != null ? entries.get(taskId) : null;
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.subTasks;
+    }
+
+    // Совпадает ли запись с subTasks (без учета в статистике попаданий)
+    public boolean isUnchanged(String taskId, List<SubTask> subTasks) {
+        Entry entry = taskId != null ? entries.get(taskId) : null;
+        return entry != null && entry.subTasks.equals(subTasks);
+    }
+
+    public void put(String taskId, List<SubTask> subTasks) {
+        if (taskId == null || subTasks == null) return;
+        Entry entry = new Entry(subTasks, estimateBytes(taskId, subTasks));
+        Entry previous = entries.put(taskId, entry);
+        if (previous != null) currentBytes -= previous.bytes;
+        currentBytes += entry.bytes;
+        trimToSize();
+    }
+
+    public void remove(String taskId) {
+        Entry entry = taskId != null ? entries.remove(taskId) : null;
+        if (entry != null) currentBytes -= entry.bytes;
+    }
+
+    public void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    // Вытеснение самых старых незакрепленных записей, пока кэш превышает лимиты
+    private void trimToSize() {
+        if (entries.size() <= maxEntries && currentBytes <= maxBytes) return;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || currentBytes > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, Entry> oldest = iterator.next();
+            String taskId = oldest.getKey();
+            if (evictionPolicy != null && evictionPolicy.isPinned(taskId)) continue; // Задача на экране
+            iterator.remove();
+            currentBytes -= oldest.getValue().bytes;
+            evictionCount++;
+            if (evictionListener != null) evictionListener.onEvicted(taskId);
+        }
+        Log.d(TAG, "Trimmed " + describe());
+    }
+
+    static long estimateBytes(String taskId, List<SubTask> subTasks) {
+        long bytes = ENTRY_OVERHEAD_BYTES + stringBytes(taskId);
+        for (SubTask subTask : subTasks) {
+            bytes += SUBTASK_OVERHEAD_BYTES + stringBytes(subTask.getSubTaskId()) + stringBytes(subTask.getDescription());
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String value) {
+        return value != null ? STRING_OVERHEAD_BYTES + 2L * value.length() : 0;
+    }
+
+    // --- Статистика ---
+    public int size() { return entries.size(); }
+    public long getEstimatedBytes() { return currentBytes; }
+    public int getHitCount() { return hitCount; }
+    public int getMissCount() { return missCount; }
+    public int getEvictionCount() { return evictionCount; }
+
+    public String describe() {
+        return "[entries=" + entries.size() + "/" + maxEntries + ", bytes=" + currentBytes + "/" + maxBytes
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    private static final class Entry {
+        final List<SubTask> subTasks;
+        final long bytes; // Оценка объема записи
+
+        Entry(List<SubTask> subTasks, long bytes) {
+            this.subTasks = subTasks;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Подзадачи всех задач текущего вида через запросы к группе коллекций "subtasks"
+// (userId == пользователь, taskId in [...]) вместо отдельного слушателя на каждую строку списка.
+// Задачи распределяются по группам не больше MAX_TASKS_PER_QUERY (ограничение оператора in),
+// поэтому число слушателей зависит от числа групп, а не от прокрутки и переиспользования строк.
+public class SubTaskFeed {
+    private static final String TAG = "SubTaskFeed";
+    private static final String KEY_PREFIX = "subtasks:"; // Префикс ключей подписок групп
+    static final int MAX_TASKS_PER_QUERY = 30; // Максимум значений в whereIn
+
+    // Получатель подзадач: вызывается для каждой задачи группы при каждом снимке. Снимок из кэша Firestore
+    // может быть неполным, поэтому из него приходят только задачи, у которых нашлись документы (fromCache = true)
+    public interface Callback {
+        void onSubTasksLoaded(String taskId, List<SubTask> subTasks, boolean fromCache);
+    }
+
+    private final SnapshotSubscriptionManager subscriptions;
+    private final Query baseQuery; // collectionGroup("subtasks") с фильтром по пользователю
+    private final List<Chunk> chunks = new ArrayList<>(); // Группы задач, по одному слушателю на группу
+    private final Map<String, Chunk> chunkByTask = new HashMap<>(); // Группа, в которую попала задача
+    private Callback callback;
+    private int nextChunkId = 0; // Номер для ключа следующей группы
+
+    public SubTaskFeed(SnapshotSubscriptionManager subscriptions, Query baseQuery) {
+        this.subscriptions = subscriptions;
+        this.baseQuery = baseQuery;
+    }
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    // Набор задач, подзадачи которых нужны. Задачи, оставшиеся в наборе, не меняют группу,
+    // поэтому перезапрашиваются только группы, состав которых изменился
+    public void setTaskIds(Collection<String> taskIds) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String taskId : taskIds) {
+            if (taskId != null) wanted.add(taskId);
+        }
+        Set<Chunk> changed = new HashSet<>();
+
+        // Задачи, вышедшие из вида
+        for (String taskId : new ArrayList<>(chunkByTask.keySet())) {
+            if (!wanted.contains(taskId)) {
+                Chunk chunk = chunkByTask.remove(taskId);
+                chunk.taskIds.remove(taskId);
+                changed.add(chunk);
+            }
+        }
+        // Новые задачи — в группы со свободными местами
+        for (String taskId : wanted) {
+            if (chunkByTask.containsKey(taskId)) continue;
+            Chunk chunk = chunkWithSpace();
+            chunk.taskIds.add(taskId);
+            chunkByTask.put(taskId, chunk);
+            changed.add(chunk);
+        }
+
+        for (Chunk chunk : changed) {
+            if (chunk.taskIds.isEmpty()) {
+                chunks.remove(chunk);
+                subscriptions.remove(chunk.key);
+            } else {
+                subscriptions.replace(chunk.key, baseQuery.whereIn("taskId", new ArrayList<>(chunk.taskIds)), chunk);
+            }
+        }
+        if (!changed.isEmpty()) {
+            Log.d(TAG, "Tracking " + chunkByTask.size() + " tasks in " + chunks.size() + " queries: " + subscriptions.describe());
+        }
+    }
+
+    public boolean isTracking(String taskId) {
+        return chunkByTask.containsKey(taskId);
+    }
+
+    public int getQueryCount() {
+        return chunks.size();
+    }
+
+    public int getTrackedTaskCount() {
+        return chunkByTask.size();
+    }
+
+    private Chunk chunkWithSpace() {
+        for (Chunk chunk : chunks) {
+            if (chunk.taskIds.size() < MAX_TASKS_PER_QUERY) return chunk;
+        }
+        Chunk chunk = new Chunk(KEY_PREFIX + nextChunkId++);
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    // Группа задач с одним слушателем; снимок раздается по задачам через родительский документ подзадачи
+    private final class Chunk implements EventListener<QuerySnapshot> {
+        final String key;
+        final Set<String> taskIds = new LinkedHashSet<>();
+
+        Chunk(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onEvent(QuerySnapshot snapshot, FirebaseFirestoreException error) {
+            if (error != null) {
+                Log.e("FirestoreError", "Error loading subtasks for " + key + ": " + error.getMessage()); // Логирование ошибки
+                return;
+            }
+            if (snapshot == null || callback == null) return;
+
+            long trace = UiTrace.begin(UiTrace.DECODE_SUBTASKS);
+            boolean fromCache = snapshot.getMetadata().isFromCache();
+            Map<String, List<SubTask>> byTask = new HashMap<>();
+            for (String taskId : taskIds) {
+                byTask.put(taskId, new ArrayList<>()); // Задача без документов — пустой список подзадач
+            }
+            for (QueryDocumentSnapshot doc : snapshot) {
+                DocumentReference parent = doc.getReference().getParent().getParent(); // tasks/{taskId}
+                List<SubTask> subTasks = parent != null ? byTask.get(parent.getId()) : null;
+                if (subTasks == null) continue; // Задача уже ушла из группы
+                try {
+                    subTasks.add(SubTaskCodec.decode(doc.getId(), doc.getData()));
+                } catch (Exception e) {
+                    Log.e("SubTaskLoad", "Error converting subtask document " + doc.getId() + ": " + e.getMessage()); // Логирование ошибки
+                }
+            }
+            UiTrace.end(UiTrace.DECODE_SUBTASKS, trace);
+            Log.d("SubTaskLoad", "Snapshot for " + key + ": tasks=" + byTask.size() + ", subtasks=" + snapshot.size()
+                    + ", fromCache=" + fromCache);
+            for (Map.Entry<String, List<SubTask>> entry : byTask.entrySet()) {
+                // Пустой список из кэша значит лишь, что подзадачи еще не попали в кэш, — не затираем известные
+                if (fromCache && entry.getValue().isEmpty()) continue;
+                callback.onSubTasksLoaded(entry.getKey(), entry.getValue(), fromCache);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Однократное дополнение старых подзадач полями userId и taskId, по которым SubTaskFeed
+// находит подзадачи запросом к группе коллекций. Новые подзадачи пишутся с этими полями сразу
+public final class SubTaskMigration {
+    private static final String TAG = "SubTaskMigration";
+    private static final String PREFS = "subtask_migration";
+    private static final int MAX_BATCH_WRITES = 500; // Ограничение Firestore на пакет записи
+
+    private SubTaskMigration() {
+    }
+
+    public static void runOnce(Context context, FirebaseFirestore db, String userId) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String doneKey = "done_" + userId;
+        if (prefs.getBoolean(doneKey, false)) return;
+
+        db.collection("tasks").whereEqualTo("userId", userId).get()
+                .continueWithTask(tasksQuery -> {
+                    List<com.google.android.gms.tasks.Task<QuerySnapshot>> subtaskQueries = new ArrayList<>();
+                    for (QueryDocumentSnapshot taskDoc : tasksQuery.getResult()) {
+                        subtaskQueries.add(taskDoc.getReference().collection("subtasks").get());
+                    }
+                    return Tasks.<QuerySnapshot>whenAllSuccess(subtaskQueries);
+                })
+                .continueWithTask(subtaskResults -> {
+                    List<com.google.android.gms.tasks.Task<Void>> commits = new ArrayList<>();
+                    WriteBatch batch = db.batch();
+                    int writes = 0;
+                    for (QuerySnapshot subtasks : subtaskResults.getResult()) {
+                        for (DocumentSnapshot doc : subtasks.getDocuments()) {
+                            if (doc.contains(SubTaskCodec.FIELD_USER_ID) && doc.contains(SubTaskCodec.FIELD_TASK_ID)) continue;
+                            batch.update(doc.getReference(),
+                                    SubTaskCodec.FIELD_USER_ID, userId,
+                                    SubTaskCodec.FIELD_TASK_ID, doc.getReference().getParent().getParent().getId());
+                            if (++writes % MAX_BATCH_WRITES == 0) {
+                                commits.add(batch.commit());
+                                batch = db.batch();
+                            }
+                        }
+                    }
+                    if (writes % MAX_BATCH_WRITES != 0) commits.add(batch.commit());
+                    Log.d(TAG, "Backfilling " + writes + " subtasks for user " + userId);
+                    return Tasks.whenAll(commits);
+                })
+                .addOnSuccessListener(aVoid -> prefs.edit().putBoolean(doneKey, true).apply())
+                .addOnFailureListener(e -> Log.e(TAG, "Subtask backfill failed, will retry on next start", e));
+    }
+}
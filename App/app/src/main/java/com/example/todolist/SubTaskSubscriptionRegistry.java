@@ -0,0 +1,113 @@
+package com.example.todolist;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Реестр подписок на подзадачи с подсчетом ссылок от ViewHolder'ов.
+// Строка, привязанная к задаче, держит ссылку на ее подзадачи; когда задачу отпускает последняя строка,
+// подписка снимается не сразу, а через IDLE_RELEASE_MS — быстрая прокрутка туда и обратно
+// не перезапрашивает группы SubTaskFeed. Изменения набора задач передаются в SubTaskFeed одним вызовом за кадр.
+public class SubTaskSubscriptionRegistry {
+    private static final String TAG = "SubTaskRegistry";
+    static final long IDLE_RELEASE_MS = 5_000; // Сколько держать подписку задачи, ушедшей с экрана
+
+    private final SubTaskFeed feed;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Integer> refCounts = new HashMap<>(); // Сколько строк привязано к задаче
+    private final Map<String, Runnable> idleReleases = new HashMap<>(); // Отложенные отписки задач без строк
+    private boolean syncScheduled = false; // Запланирована ли передача набора задач в SubTaskFeed
+    private int totalAcquireCount = 0;
+    private int totalReleaseCount = 0;
+    private int totalExpiredCount = 0; // Сколько задач отписано после простоя
+    private int totalEvictedCount = 0; // Сколько задач отписано из-за вытеснения из кэша
+
+    public SubTaskSubscriptionRegistry(SubTaskFeed feed) {
+        this.feed = feed;
+    }
+
+    // Строка привязана к задаче
+    public void acquire(String taskId) {
+        if (taskId == null) return;
+        totalAcquireCount++;
+        Runnable idleRelease = idleReleases.remove(taskId);
+        if (idleRelease != null) handler.removeCallbacks(idleRelease); // Задача вернулась на экран до истечения простоя
+        Integer count = refCounts.get(taskId);
+        refCounts.put(taskId, count == null ? 1 : count + 1);
+        if (count == null && idleRelease == null) scheduleSync(); // Новая задача для подписки
+    }
+
+    // Строка отвязана от задачи (переиспользована или удалена)
+    public void release(String taskId) {
+        Integer count = taskId != null ? refCounts.get(taskId) : null;
+        if (count == null) return;
+        totalReleaseCount++;
+        if (count > 1) {
+            refCounts.put(taskId, count - 1);
+            return;
+        }
+        refCounts.remove(taskId);
+        Runnable idleRelease = () -> {
+            idleReleases.remove(taskId);
+            totalExpiredCount++;
+            scheduleSync();
+        };
+        idleReleases.put(taskId, idleRelease);
+        handler.postDelayed(idleRelease, IDLE_RELEASE_MS);
+    }
+
+    // Привязана ли задача к строке на экране
+    public boolean isAttached(String taskId) {
+        return refCounts.containsKey(taskId);
+    }
+
+    // Подзадачи задачи вытеснены из кэша: если ни одна строка ее не держит, отписка без ожидания простоя
+    public void evict(String taskId) {
+        if (refCounts.containsKey(taskId)) return;
+        Runnable idleRelease = idleReleases.remove(taskId);
+        if (idleRelease == null) return;
+        handler.removeCallbacks(idleRelease);
+        totalEvictedCount++;
+        scheduleSync();
+    }
+
+    // Сброс реестра при уничтожении экрана: отложенные отписки и синхронизации отменяются,
+    // сами слушатели снимает владелец SnapshotSubscriptionManager
+    public void dispose() {
+        handler.removeCallbacksAndMessages(null);
+        idleReleases.clear();
+        refCounts.clear();
+        syncScheduled = false;
+    }
+
+    // --- Метрики ---
+    public int getAttachedTaskCount() { return refCounts.size(); } // Задачи, привязанные к строкам
+    public int getIdleTaskCount() { return idleReleases.size(); } // Задачи, ожидающие отписки
+    public int getLiveListenerCount() { return feed.getQueryCount(); } // Слушатели Firestore для подзадач
+    public int getTotalAcquireCount() { return totalAcquireCount; }
+    public int getTotalReleaseCount() { return totalReleaseCount; }
+    public int getTotalExpiredCount() { return totalExpiredCount; }
+    public int getTotalEvictedCount() { return totalEvictedCount; }
+
+    public String describe() {
+        return "[attached=" + refCounts.size() + ", idle=" + idleReleases.size() + ", listeners=" + feed.getQueryCount()
+                + ", acquired=" + totalAcquireCount + ", released=" + totalReleaseCount + ", expired=" + totalExpiredCount + ", evicted=" + totalEvictedCount + "]";
+    }
+
+    private void scheduleSync() {
+        if (syncScheduled) return;
+        syncScheduled = true;
+        handler.post(() -> {
+            syncScheduled = false;
+            Set<String> live = new LinkedHashSet<>(refCounts.keySet());
+            live.addAll(idleReleases.keySet());
+            feed.setTaskIds(live);
+            Log.d(TAG, "Subtask subscriptions " + describe());
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.todolist;
+
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayDeque;
+
+// Общий пул строк подзадач для всех вложенных списков. Строки, ушедшие из одного списка подзадач,
+// переиспользуются в другом, а запас разметок subtask_item заранее создается в фоновом потоке
+// (AsyncLayoutInflater), чтобы раскрытие задачи не раздувало разметки в главном потоке.
+public class SubTaskViewPool {
+    private static final String TAG = "SubTaskViewPool";
+    static final int DEFAULT_PREWARM_COUNT = 20; // Запас заранее созданных разметок
+    static final int DEFAULT_MAX_RECYCLED = 40; // Максимум строк подзадач в общем пуле
+    static final int MAX_PREFETCH_COUNT = 10; // Предел вложенной предзагрузки строк одной задачи
+
+    private final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+    private final ArrayDeque<View> prewarmed = new ArrayDeque<>(); // Готовые разметки, еще не отданные адаптерам
+    private final int prewarmCount;
+    private final int maxRecycled;
+    private AsyncLayoutInflater inflater;
+    private ViewGroup parent; // Родитель для параметров разметки
+    private boolean inflating = false; // Ожидается ли разметка из фонового потока
+    private int prewarmedTotal = 0; // Сколько разметок создано в фоне
+    private int takenCount = 0; // Сколько фоновых разметок отдано адаптерам
+    private int inflatedOnMainCount = 0; // Сколько разметок пришлось создать в главном потоке
+
+    public SubTaskViewPool() {
+        this(DEFAULT_PREWARM_COUNT, DEFAULT_MAX_RECYCLED);
+    }
+
+    public SubTaskViewPool(int prewarmCount, int maxRecycled) {
+        this.prewarmCount = prewarmCount;
+        this.maxRecycled = maxRecycled;
+        pool.setMaxRecycledViews(SubTaskAdapter.VIEW_TYPE_SUBTASK, maxRecycled);
+    }
+
+    // Подключение вложенного списка подзадач к общему пулу
+    public void attach(RecyclerView subTaskRecyclerView, LinearLayoutManager layoutManager) {
+        layoutManager.setRecycleChildrenOnDetach(true); // Строки уходящей с экрана задачи возвращаются в общий пул
+        subTaskRecyclerView.setRecycledViewPool(pool);
+    }
+
+    // Вложенная предзагрузка по размеру раскрытого списка: свернутой задаче строки не нужны
+    public static void tunePrefetch(LinearLayoutManager layoutManager, int subTaskCount, boolean expanded) {
+        layoutManager.setInitialPrefetchItemCount(expanded ? Math.min(subTaskCount, MAX_PREFETCH_COUNT) : 0);
+    }
+
+    // Начало фонового создания запаса разметок. Должен вызываться из главного потока
+    public void prewarm(@NonNull ViewGroup parent) {
+        if (inflater == null) {
+            inflater = new AsyncLayoutInflater(parent.getContext());
+        }
+        this.parent = parent;
+        inflateNext();
+    }
+
+    // Готовая разметка из запаса или null; запас пополняется в фоне
+    View takePrewarmed() {
+        View view = prewarmed.poll();
+        if (view != null) {
+            takenCount++;
+            inflateNext();
+        }
+        return view;
+    }
+
+    // Разметка строки подзадачи: из запаса, иначе в главном потоке
+    View obtainView(@NonNull ViewGroup parent) {
+        View view = takePrewarmed();
+        if (view != null) return view;
+        inflatedOnMainCount++;
+        return LayoutInflater.from(parent.getContext()).inflate(R.layout.subtask_item, parent, false);
+    }
+
+    // Разметки создаются по одной: очередь AsyncLayoutInflater ограничена и при переполнении блокирует главный поток.
+    // Всего в фоне создается не больше, чем может удержать запас вместе с общим пулом
+    private void inflateNext() {
+        if (inflating || inflater == null || prewarmed.size() >= prewarmCount
+                || prewarmedTotal >= prewarmCount + maxRecycled) return;
+        inflating = true;
+        inflater.inflate(R.layout.subtask_item, parent, (view, resid, p) -> {
+            inflating = false;
+            if (inflater == null) return; // Пул уже освобожден
+            prewarmed.add(view);
+            prewarmedTotal++;
+            if (prewarmed.size() == prewarmCount) {
+                Log.d(TAG, "Prewarmed " + describe());
+            }
+            inflateNext();
+        });
+    }
+
+    // Освобождение запаса (onDestroy)
+    public void clear() {
+        prewarmed.clear();
+        pool.clear();
+        parent = null;
+        inflater = null;
+    }
+
+    public int getPrewarmedCount() { return prewarmed.size(); }
+    public int getInflatedOnMainCount() { return inflatedOnMainCount; }
+    public int getRecycledCount() { return pool.getRecycledViewCount(SubTaskAdapter.VIEW_TYPE_SUBTASK); }
+
+    public String describe() {
+        return "[prewarmed=" + prewarmed.size() + "/" + prewarmCount + ", created=" + prewarmedTotal
+                + ", taken=" + takenCount + ", inflatedOnMain=" + inflatedOnMainCount + ", recycled=" + getRecycledCount() + "]";
+    }
+}
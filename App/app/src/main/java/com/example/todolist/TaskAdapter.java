@@ -6,6 +6,8 @@ import android.app.DatePickerDialog;
 import android.app.TimePickerDialog;
 import android.content.Context;
 import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -17,107 +19,696 @@ import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.MetadataChanges;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.WriteBatch;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     // Константы для определения типов элементов в RecyclerView
     private static final int VIEW_TYPE_TASK = 1; // Тип для задач
     private static final int VIEW_TYPE_DATE_HEADER = 2; // Тип для заголовков дат
+    private static final int VIEW_TYPE_SUBTASK = 3; // Тип для подзадач в плоском режиме
 
     // Объявление переменных экземпляра
-    private List<Object> displayItems; // Список отображаемых элементов (задачи или заголовки дат)
+    private List<RowModel> displayItems; // Модели отображаемых строк (задачи, заголовки дат и подзадачи в плоском режиме)
     private final Runnable progressUpdateCallback; // Callback для обновления прогресса
-    private final SimpleDateFormat taskDateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault()); // Форматтер для отображения даты и времени задач
     private final Context context; // Контекст приложения
     private final FirebaseFirestore db; // Экземпляр Firestore для работы с базой данных
-    private final Map<String, List<SubTask>> subTasksCache = new HashMap<>(); // Кэш для хранения подзадач по ID задачи
-    private int totalTaskCount = 0; // Общее количество задач
-    private int completedTaskCount = 0; // Количество выполненных задач
-    private int currentProgressPercentage = 0; // Текущий процент прогресса
+    private final SubTaskCache subTasksCache = new SubTaskCache(); // Ограниченный LRU-кэш подзадач по ID задачи
+    private final SubTaskViewPool subTaskViews = new SubTaskViewPool(); // Общий пул строк вложенных списков подзадач
+    private final TaskProgress progress = new TaskProgress(); // Счетчики прогресса отображаемых задач
+    private final FrameInvalidator invalidator = new FrameInvalidator(); // Перерисовки прогресса и строк не чаще раза за кадр
+    private static final Object PROGRESS_KEY = new Object(); // Ключ пометки индикатора прогресса
+    private boolean showDateHeaders = false; // Режим списка с заголовками дат (иначе — задачи одного дня)
+    private boolean flatSubTasks = false; // Подзадачи раскрытых задач — строки общего списка, а не вложенные списки
+    private static final ExecutorService ROW_EXECUTOR = Executors.newSingleThreadExecutor(); // Фоновый поток для моделей строк и диффов
+    private final RowModelFactory rowFactory = new RowModelFactory(); // Форматирование строк; используется только в ROW_EXECUTOR
+    private final Handler mainHandler = new Handler(Looper.getMainLooper()); // Доставка результатов в главный поток
+    private int submitGeneration = 0; // Номер последней отправки списка
+    private static final Object PAYLOAD_SUBTASKS = new Object(); // Частичная перепривязка строки: изменились только подзадачи
+    private SubTaskSubscriptionRegistry subTaskSubscriptions; // Подписки на подзадачи задач, привязанных к строкам
+    private final TaskDeleter taskDeleter; // Каскадное удаление задач страницами подзадач
+    private final BulkTaskWriter bulkWriter; // Пакетные операции над выбранными задачами
+    private final TaskUiState uiState; // Раскрытие задач на этом устройстве
+    private TaskStore taskStore; // Локальное хранилище: подзадачи до ответа подписки
+    private Executor storeExecutor; // Поток хранилища
+    private final WriteOutbox outbox; // Журнал записей: операции сохраняются локально до подтверждения сервером
+    private final CoalescingWriteQueue writeQueue; // Отложенные записи статусов с объединением повторных переключений
+    private final Set<String> selectedIds = new LinkedHashSet<>(); // Выбранные задачи (режим выбора, если не пусто)
+    private SelectionListener selectionListener;
+    private static final Object PAYLOAD_SELECTION = new Object(); // Частичная перепривязка строки: изменился только выбор
+    private static final int COLOR_TASK_CARD = 0xFF3A2C3A; // Фон карточки задачи (как в task_item)
+    private static final int COLOR_TASK_CARD_SELECTED = 0xFF5E4A75; // Фон выбранной карточки
+
+    // Получатель изменений выбора: число выбранных задач, 0 — выход из режима выбора
+    public interface SelectionListener {
+        void onSelectionChanged(int selectedCount);
+    }
 
     // Конструктор адаптера
     public TaskAdapter(List<Task> initialTasks, Runnable progressUpdateCallback, Context context) {
-        this.displayItems = new ArrayList<>(initialTasks); // Инициализация списка задач
+        this.displayItems = new ArrayList<>(); // Начальные задачи приходят через фоновое построение строк
         this.progressUpdateCallback = progressUpdateCallback; // Установка callback для прогресса
         this.context = context; // Сохранение контекста
         this.db = FirebaseFirestore.getInstance(); // Инициализация Firestore
+        setHasStableIds(true); // Стабильные ID строк из ID документов
+        this.uiState = new TaskUiState(context);
+        this.outbox = WriteOutbox.get(context);
+        this.writeQueue = new CoalescingWriteQueue(outbox);
+        this.taskDeleter = new TaskDeleter(context, db, outbox.getUserId()); // Незавершенные удаления — только текущего пользователя
+        taskDeleter.setListener(new TaskDeleter.Listener() {
+            @Override
+            public void onProgress(String taskId, int deletedSubTasks) {
+                Log.d("FirestoreDelete", "Task " + taskId + ": deleted " + deletedSubTasks + " subtasks"); // Логирование хода удаления
+            }
+
+            @Override
+            public void onDeleted(String taskId) {
+                forgetSubTasks(taskId); // Удаление подзадач из кэша
+                uiState.forget(taskId); // Удаление локального состояния задачи
+                if (taskStore != null) storeExecutor.execute(() -> taskStore.deleteTasks(Collections.singletonList(taskId)));
+                Log.d("AdapterRemove", "Task deleted from Firestore, ID: " + taskId + ". SnapshotListener will update UI."); // Логирование
+                publishProgress(); // Передача прогресса в UI
+            }
+
+            @Override
+            public void onFailed(String taskId, Exception error) {
+                Toast.makeText(context, "Ошибка удаления задачи", Toast.LENGTH_SHORT).show(); // Уведомление; удаление продолжится при следующем запуске
+            }
+        });
+        this.bulkWriter = new BulkTaskWriter(db, outbox, taskDeleter);
+        if (initialTasks != null && !initialTasks.isEmpty()) {
+            setCalendarTasks(initialTasks);
+        }
+    }
+
+    // Подключение общей подписки на подзадачи: ее результаты раздаются в subTasksCache.
+    // Подписываются только задачи, привязанные к строкам, — их число ограничено экраном, а не размером списка
+    public void setSubTaskFeed(SubTaskFeed feed) {
+        feed.setCallback(this::onSubTasksSynced);
+        subTaskSubscriptions = new SubTaskSubscriptionRegistry(feed);
+        subTasksCache.setEvictionPolicy(subTaskSubscriptions::isAttached); // Подзадачи строк на экране не вытесняются
+        subTasksCache.setEvictionListener(taskId -> {
+            subTaskSubscriptions.evict(taskId); // Вытесненная задача отписывается сразу
+            progress.forgetSubTasks(taskId); // Доля подзадач вернется со следующей загрузкой
+        });
+    }
+
+    // Подзадачи задачи больше не нужны: из кэша уходит и их вклад в прогресс
+    private void forgetSubTasks(String taskId) {
+        subTasksCache.remove(taskId);
+        progress.forgetSubTasks(taskId);
+    }
+
+    // Локальное хранилище: подзадачи из подписки сохраняются в него, а строки, чьих подзадач
+    // еще нет в кэше, получают их из хранилища, не дожидаясь подписки
+    public void setTaskStore(TaskStore taskStore, Executor storeExecutor) {
+        this.taskStore = taskStore;
+        this.storeExecutor = storeExecutor;
+    }
+
+    // Подзадачи из подписки: сохранение в хранилище и обновление строки
+    private void onSubTasksSynced(String taskId, List<SubTask> subTasks, boolean fromCache) {
+        if (taskStore != null && !fromCache) { // В хранилище — только подтвержденный сервером полный список
+            List<SubTask> snapshot = new ArrayList<>(subTasks);
+            storeExecutor.execute(() -> taskStore.replaceSubTasks(taskId, snapshot));
+        }
+        onSubTasksLoaded(taskId, subTasks);
+    }
+
+    // Подзадачи задачи из хранилища, если подписка их еще не доставила
+    private void loadStoredSubTasks(String taskId) {
+        if (taskStore == null || taskId == null || subTasksCache.get(taskId) != null) return;
+        storeExecutor.execute(() -> {
+            List<SubTask> stored = taskStore.subTasksOf(taskId);
+            if (stored == null) return; // Подзадачи задачи еще не синхронизировались
+            mainHandler.post(() -> {
+                if (subTasksCache.get(taskId) == null) onSubTasksLoaded(taskId, stored); // Подписка успела раньше — ее данные новее
+            });
+        });
+    }
+
+    // Статистика кэша подзадач для диагностики
+    public SubTaskCache getSubTasksCache() {
+        return subTasksCache;
+    }
+
+    // Подзадачи задачи из кэша или пустой список
+    private List<SubTask> cachedSubTasks(String taskId) {
+        List<SubTask> subTasks = subTasksCache.get(taskId);
+        return subTasks != null ? subTasks : new ArrayList<>();
+    }
+
+    // Общий пул строк подзадач: запас разметок создается вызовом prewarm после подключения адаптера
+    public SubTaskViewPool getSubTaskViewPool() {
+        return subTaskViews;
+    }
+
+    // --- Режим выбора и пакетные операции ---
+    public void setSelectionListener(SelectionListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+
+    public boolean isSelectionMode() {
+        return !selectedIds.isEmpty();
+    }
+
+    public int getSelectedCount() {
+        return selectedIds.size();
+    }
+
+    // Выбор задачи или снятие выбора; перерисовывается только ее строка
+    private void toggleSelection(Task task) {
+        if (!selectedIds.remove(task.getId())) selectedIds.add(task.getId());
+        int position = positionOfTask(task.getId());
+        if (position != RecyclerView.NO_POSITION) notifyItemChanged(position, PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    // Выход из режима выбора одним обновлением видимых строк
+    public void clearSelection() {
+        if (selectedIds.isEmpty()) return;
+        selectedIds.clear();
+        notifyItemRangeChanged(0, displayItems.size(), PAYLOAD_SELECTION);
+        notifySelectionChanged();
+    }
+
+    private void notifySelectionChanged() {
+        if (selectionListener != null) selectionListener.onSelectionChanged(selectedIds.size());
+    }
+
+    // Выбранные задачи, которые еще отображаются, в порядке списка
+    public List<Task> getSelectedTasks() {
+        List<Task> tasks = new ArrayList<>(selectedIds.size());
+        for (RowModel item : displayItems) {
+            if (item instanceof TaskRow && selectedIds.contains(((TaskRow) item).getTaskId())) {
+                tasks.add(((TaskRow) item).task);
+            }
+        }
+        return tasks;
+    }
+
+    // Отметка выбранных задач выполненными; список обновится из снимка Firestore, по снимку на пакет
+    public void completeSelected() {
+        bulkWriter.complete(getSelectedTasks(), bulkCallback("Выполнено задач: "));
+        clearSelection();
+    }
+
+    // Перенос выбранных задач на день day с сохранением их времени
+    public void moveSelectedTo(Calendar day) {
+        bulkWriter.moveToDate(getSelectedTasks(), day, bulkCallback("Перенесено задач: "));
+        clearSelection();
+    }
+
+    // Удаление выбранных задач вместе с подзадачами
+    public void deleteSelected() {
+        List<Task> tasks = getSelectedTasks();
+        bulkWriter.delete(tasks, new BulkTaskWriter.Callback() {
+            @Override
+            public void onComplete(int taskCount, int commitCount) {
+                for (Task task : tasks) forgetSubTasks(task.getId()); // Удаление подзадач из кэша
+                Log.d("BulkWrite", "Deleted " + taskCount + " tasks in " + commitCount + " commits"); // Логирование
+                Toast.makeText(context, "Удалено задач: " + taskCount, Toast.LENGTH_SHORT).show(); // Уведомление
+            }
+
+            @Override
+            public void onFailed(Exception error) {
+                Log.e("BulkWrite", "Bulk delete failed", error); // Логирование ошибки
+                Toast.makeText(context, "Ошибка удаления задач", Toast.LENGTH_SHORT).show(); // Уведомление
+            }
+        });
+        clearSelection();
+    }
+
+    private BulkTaskWriter.Callback bulkCallback(String message) {
+        return new BulkTaskWriter.Callback() {
+            @Override
+            public void onComplete(int taskCount, int commitCount) {
+                Log.d("BulkWrite", message + taskCount + " in " + commitCount + " commits"); // Логирование
+                Toast.makeText(context, message + taskCount, Toast.LENGTH_SHORT).show(); // Уведомление
+            }
+
+            @Override
+            public void onFailed(Exception error) {
+                Log.e("BulkWrite", "Bulk update failed", error); // Логирование ошибки
+                Toast.makeText(context, "Ошибка обновления задач", Toast.LENGTH_SHORT).show(); // Уведомление
+            }
+        };
+    }
+
+    // Каскадное удаление задач: незавершенные удаления продолжаются вызовом resumePending
+    public TaskDeleter getTaskDeleter() {
+        return taskDeleter;
+    }
+
+    // Очередь записей статусов: отправляется сразу вызовом flush (onStop)
+    public CoalescingWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    // Локальное состояние отображения задач: перенос старых флагов и сохранение в onStop
+    public TaskUiState getUiState() {
+        return uiState;
+    }
+
+    // Счетчики подписок на подзадачи для диагностики
+    public SubTaskSubscriptionRegistry getSubTaskSubscriptions() {
+        return subTaskSubscriptions;
+    }
+
+    // Новые подзадачи задачи из общей подписки: обновление кэша и перепривязка только ее строки
+    private void onSubTasksLoaded(String taskId, List<SubTask> subTasks) {
+        if (subTasksCache.isUnchanged(taskId, subTasks)) return; // Ничего не изменилось
+        subTasksCache.put(taskId, subTasks);
+        progress.setSubTasks(taskId, subTasks); // Вклад задачи в прогресс с весами
+        invalidateSubTaskRow(taskId);
+        publishProgress();
+    }
+
+    // Перепривязка подзадач строки в ближайшем кадре; позиция ищется в момент перерисовки
+    private void invalidateSubTaskRow(String taskId) {
+        invalidator.invalidate("row:" + taskId, () -> {
+            int position = positionOfTask(taskId);
+            if (position != RecyclerView.NO_POSITION) {
+                notifyItemChanged(position, PAYLOAD_SUBTASKS);
+                if (flatSubTasks) syncFlatSubTasks(position); // Строки подзадач под задачей
+            }
+        });
+    }
+
+    private int positionOfTask(String taskId) {
+        for (int i = 0; i < displayItems.size(); i++) {
+            RowModel item = displayItems.get(i);
+            if (item instanceof TaskRow && taskId.equals(((TaskRow) item).getTaskId())) return i;
+        }
+        return RecyclerView.NO_POSITION;
     }
 
     // --- Методы установки данных ---
     // Установка задач для отображения в режиме календаря
     public void setCalendarTasks(List<Task> tasks) {
-        this.displayItems = new ArrayList<>(tasks != null ? tasks : new ArrayList<>()); // Обновление списка задач
-        calculateProgress(); // Пересчет прогресса
-        notifyDataSetChanged(); // Уведомление адаптера об изменении данных
+        submitTasks(new ArrayList<>(tasks != null ? tasks : new ArrayList<>()), false, null); // В режиме календаря заголовков нет
     }
 
-    // Установка всех задач для отображения в режиме списка
-    public void setAllTasksList(List<Object> items) {
-        this.displayItems = new ArrayList<>(items != null ? items : new ArrayList<>()); // Обновление списка элементов
-        calculateProgress(); // Пересчет прогресса
-        notifyDataSetChanged(); // Уведомление адаптера об изменении данных
+    // Установка всех задач для отображения в режиме списка; tasks отсортированы по dateTime
+    public void setAllTasks(List<Task> tasks) {
+        setAllTasks(tasks, null);
     }
 
-    // --- Расчет и получение прогресса ---
-    // Пересчет прогресса выполнения задач
-    private void calculateProgress() {
-        totalTaskCount = 0; // Сброс счетчика общего количества задач
-        completedTaskCount = 0; // Сброс счетчика выполненных задач
-        if (displayItems != null) { // Проверка наличия элементов
-            for (Object item : displayItems) { // Перебор всех элементов
-                if (item instanceof Task) { // Если элемент — задача
-                    totalTaskCount++; // Увеличение общего счетчика
-                    if (((Task) item).isCompleted()) { // Проверка, выполнена ли задача
-                        completedTaskCount++; // Увеличение счетчика выполненных
+    // То же, onApplied вызывается в главном потоке, когда строки списка применены к RecyclerView
+    public void setAllTasks(List<Task> tasks, @Nullable Runnable onApplied) {
+        submitTasks(new ArrayList<>(tasks != null ? tasks : new ArrayList<>()), true, onApplied); // Список сгруппирован по датам
+    }
+
+    // Позиция первой строки не раньше timeMillis: заголовок ее даты или сама задача
+    public int positionAtOrAfter(long timeMillis) {
+        Task probe = new Task();
+        probe.setDateTime(new Date(timeMillis));
+        return lowerBound(probe);
+    }
+
+    // Переключение отображения подзадач: плоский список строк (true) или вложенный список в строке задачи (false).
+    // В плоском режиме раскрытие и сворачивание — вставка и удаление диапазона строк общего списка
+    public void setFlatSubTasks(boolean flat) {
+        if (flatSubTasks == flat) return;
+        flatSubTasks = flat;
+        notifyItemRangeChanged(0, displayItems.size(), PAYLOAD_SUBTASKS); // Вложенные списки строк задач скрываются или показываются
+        List<Task> tasks = new ArrayList<>();
+        for (RowModel item : displayItems) {
+            if (item instanceof TaskRow) tasks.add(((TaskRow) item).task);
+        }
+        submitTasks(tasks, showDateHeaders, null); // Строки подзадач добавляются или убираются диффом
+    }
+
+    public boolean isFlatSubTasks() {
+        return flatSubTasks;
+    }
+
+    // Замена списка: модели строк и дифф вычисляются в фоновом потоке, перерисовываются только изменившиеся строки.
+    // Более новая отправка отменяет результат предыдущей, еще не примененной
+    private void submitTasks(List<Task> tasks, boolean withHeaders, @Nullable Runnable onApplied) {
+        final int generation = ++submitGeneration;
+        final List<RowModel> oldItems = new ArrayList<>(displayItems); // Снимок текущего списка для фонового потока
+        final Map<String, List<SubTask>> expanded = flatSubTasks ? expandedSubTasks(tasks) : null; // Подзадачи раскрытых задач из кэша
+        ROW_EXECUTOR.execute(() -> {
+            long trace = UiTrace.begin(UiTrace.BUILD_ROWS);
+            List<RowModel> newItems = rowFactory.buildList(tasks, withHeaders, expanded);
+            UiTrace.end(UiTrace.BUILD_ROWS, trace);
+            trace = UiTrace.begin(UiTrace.DIFF_ROWS);
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DisplayItemsDiff(oldItems, newItems));
+            UiTrace.end(UiTrace.DIFF_ROWS, trace);
+            mainHandler.post(() -> {
+                if (generation != submitGeneration) return; // Результат устарел
+                long applyTrace = UiTrace.begin(UiTrace.APPLY_ROWS);
+                boolean changedMeanwhile = !oldItems.equals(displayItems); // Строки успели раскрыть или перестроить после снимка
+                showDateHeaders = withHeaders;
+                displayItems = newItems;
+                progress.clear(); // Новый список — счетчики заново, один проход на отправку
+                for (RowModel item : newItems) {
+                    if (item instanceof TaskRow) progress.add(((TaskRow) item).task);
+                }
+                if (changedMeanwhile) {
+                    notifyDataSetChanged(); // Дифф посчитан от другого списка
+                } else {
+                    result.dispatchUpdatesTo(TaskAdapter.this);
+                }
+                UiTrace.end(UiTrace.APPLY_ROWS, applyTrace);
+                publishProgress();
+                if (onApplied != null) onApplied.run();
+            });
+        });
+    }
+
+    // Подзадачи раскрытых задач для построения плоского списка
+    private Map<String, List<SubTask>> expandedSubTasks(List<Task> tasks) {
+        Map<String, List<SubTask>> expanded = new HashMap<>();
+        for (Task task : tasks) {
+            if (task.getId() == null || !uiState.isExpanded(task.getId())) continue;
+            List<SubTask> subTasks = subTasksCache.get(task.getId());
+            if (subTasks != null && !subTasks.isEmpty()) expanded.put(task.getId(), subTasks);
+        }
+        return expanded;
+    }
+
+    // Сравнение старого и нового списков: строки — по стабильному ID, содержимое — по модели
+    private static final class DisplayItemsDiff extends DiffUtil.Callback {
+        private final List<RowModel> oldItems;
+        private final List<RowModel> newItems;
+
+        DisplayItemsDiff(List<RowModel> oldItems, List<RowModel> newItems) {
+            this.oldItems = oldItems;
+            this.newItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() { return oldItems.size(); }
+
+        @Override
+        public int getNewListSize() { return newItems.size(); }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            RowModel oldItem = oldItems.get(oldPosition);
+            RowModel newItem = newItems.get(newPosition);
+            return oldItem.getClass() == newItem.getClass() && oldItem.getStableId() == newItem.getStableId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return oldItems.get(oldPosition).equals(newItems.get(newPosition));
+        }
+    }
+
+    // --- Точечное применение изменений индекса задач ---
+    // Модели строк для изменений строятся в фоновом потоке (в порядке очереди после ранее отправленных списков),
+    // затем каждое изменение применяется бинарным поиском по отсортированному списку (O(log n))
+    // с уведомлением RecyclerView только о затронутых строках
+    public void applyTaskChanges(List<TaskIndex.Change> changes) {
+        if (changes == null || changes.isEmpty()) return;
+        final int generation = submitGeneration;
+        final List<TaskIndex.Change> changesCopy = new ArrayList<>(changes);
+        ROW_EXECUTOR.execute(() -> {
+            List<RowChange> rowChanges = new ArrayList<>(changesCopy.size());
+            for (TaskIndex.Change change : changesCopy) {
+                Task newTask = change.newTask;
+                rowChanges.add(new RowChange(change.oldTask,
+                        newTask != null ? rowFactory.taskRow(newTask) : null,
+                        newTask != null && newTask.getDateTime() != null ? rowFactory.headerRow(newTask) : null));
+            }
+            mainHandler.post(() -> {
+                if (generation != submitGeneration) return; // Более новый список уже построен с учетом этих изменений
+                long trace = UiTrace.begin(UiTrace.APPLY_CHANGES);
+                for (RowChange change : rowChanges) {
+                    if (change.oldTask != null && change.newRow != null && replaceTaskInPlace(change.oldTask, change.newRow)) {
+                        continue; // Время задачи не изменилось — строка остается на месте
                     }
+                    if (change.oldTask != null) removeTaskRow(change.oldTask); // Удаление или перемещение
+                    if (change.newRow != null) insertTaskRow(change.newRow, change.newHeader); // Добавление или перемещение
                 }
+                UiTrace.end(UiTrace.APPLY_CHANGES, trace);
+                publishProgress();
+            });
+        });
+    }
+
+    // Изменение задачи с готовыми моделями новой строки и ее возможного заголовка
+    private static final class RowChange {
+        final Task oldTask;
+        final TaskRow newRow;
+        final HeaderRow newHeader;
+
+        RowChange(Task oldTask, TaskRow newRow, HeaderRow newHeader) {
+            this.oldTask = oldTask;
+            this.newRow = newRow;
+            this.newHeader = newHeader;
+        }
+    }
+
+    // Замена задачи на новую версию в той же позиции
+    private boolean replaceTaskInPlace(Task oldTask, TaskRow newRow) {
+        if (timeOf(oldTask) != timeOf(newRow.task)) return false;
+        int position = findTaskRow(oldTask);
+        if (position < 0) return false;
+        progress.remove(oldTask.getId());
+        progress.add(newRow.task);
+        displayItems.set(position, newRow);
+        notifyItemChanged(position);
+        if (flatSubTasks) syncFlatSubTasks(position); // Состояние раскрытия могло измениться
+        return true;
+    }
+
+    // Удаление строки задачи (и строк ее подзадач) вместе с заголовком опустевшей даты
+    private void removeTaskRow(Task task) {
+        int position = findTaskRow(task);
+        if (position < 0) return;
+        int end = subTaskRowsEnd(position);
+        int count = end - position;
+        displayItems.subList(position, end).clear();
+        progress.remove(task.getId());
+        if (selectedIds.remove(task.getId())) notifySelectionChanged(); // Удаленная задача больше не выбрана
+        boolean groupEmpty = showDateHeaders && position > 0 && displayItems.get(position - 1) instanceof HeaderRow
+                && (position == displayItems.size() || displayItems.get(position) instanceof HeaderRow);
+        if (groupEmpty) {
+            displayItems.remove(position - 1); // Заголовок даты без задач
+            notifyItemRangeRemoved(position - 1, count + 1);
+        } else {
+            notifyItemRangeRemoved(position, count);
+        }
+    }
+
+    // Вставка строки задачи в отсортированную позицию, при необходимости с новым заголовком даты
+    private void insertTaskRow(TaskRow row, HeaderRow header) {
+        Task task = row.task;
+        if (findTaskRow(task) >= 0) return; // Задача уже отображается
+        if (showDateHeaders && header == null) return; // Задачи без даты в режиме списка не отображаются
+        progress.add(task);
+        int position = lowerBound(task);
+        List<RowModel> block = new ArrayList<>(); // Строка задачи и строки ее подзадач в плоском режиме
+        block.add(row);
+        if (flatSubTasks && uiState.isExpanded(task.getId())) {
+            RowModelFactory.addSubTaskRows(block, row.getTaskId(), cachedSubTasks(row.getTaskId()));
+        }
+        if (!showDateHeaders) {
+            displayItems.addAll(position, block);
+            notifyItemRangeInserted(position, block.size());
+            return;
+        }
+        TaskRow previous = taskRowBefore(position);
+        if (previous != null && previous.day == row.day) {
+            displayItems.addAll(position, block); // Продолжение группы предыдущей задачи
+            notifyItemRangeInserted(position, block.size());
+        } else if (position + 1 < displayItems.size() && displayItems.get(position) instanceof HeaderRow
+                && ((HeaderRow) displayItems.get(position)).day == row.day) {
+            displayItems.addAll(position + 1, block); // Первая задача существующей группы
+            notifyItemRangeInserted(position + 1, block.size());
+        } else {
+            block.add(0, header); // Новая группа даты
+            displayItems.addAll(position, block);
+            notifyItemRangeInserted(position, block.size());
+        }
+    }
+
+    // Ближайшая строка задачи перед позицией, если перед ней (не считая подзадач) стоит задача, а не заголовок
+    private TaskRow taskRowBefore(int position) {
+        for (int i = position - 1; i >= 0; i--) {
+            RowModel item = displayItems.get(i);
+            if (!(item instanceof SubTaskRow)) return item instanceof TaskRow ? (TaskRow) item : null;
+        }
+        return null;
+    }
+
+    // Позиция после последней строки подзадач задачи в позиции taskPosition
+    private int subTaskRowsEnd(int taskPosition) {
+        int end = taskPosition + 1;
+        while (end < displayItems.size() && displayItems.get(end) instanceof SubTaskRow) end++;
+        return end;
+    }
+
+    // Приведение строк подзадач под задачей к ее состоянию: раскрытая показывает подзадачи из кэша, свернутая — ни одной.
+    // Совпадающие строки остаются на месте, изменившиеся перерисовываются, разница вставляется или удаляется диапазоном
+    private void syncFlatSubTasks(int taskPosition) {
+        TaskRow row = (TaskRow) displayItems.get(taskPosition);
+        List<RowModel> wanted = new ArrayList<>();
+        if (flatSubTasks && uiState.isExpanded(row.task.getId())) {
+            RowModelFactory.addSubTaskRows(wanted, row.getTaskId(), cachedSubTasks(row.getTaskId()));
+        }
+        int start = taskPosition + 1;
+        int oldCount = subTaskRowsEnd(taskPosition) - start;
+        int newCount = wanted.size();
+        for (int i = 0; i < Math.min(oldCount, newCount); i++) {
+            if (!displayItems.get(start + i).equals(wanted.get(i))) {
+                displayItems.set(start + i, wanted.get(i));
+                notifyItemChanged(start + i);
             }
         }
-        // Расчет процента прогресса
-        currentProgressPercentage = totalTaskCount > 0 ? (completedTaskCount * 100 / totalTaskCount) : 0;
-        Log.d("AdapterProgress", "Расчет: Всего=" + totalTaskCount + ", Выполнено=" + completedTaskCount + ", Прогресс=" + currentProgressPercentage); // Логирование
-        if (progressUpdateCallback != null) { // Проверка наличия callback
-            progressUpdateCallback.run(); // Вызов callback для обновления UI
+        if (newCount > oldCount) {
+            displayItems.addAll(start + oldCount, wanted.subList(oldCount, newCount));
+            notifyItemRangeInserted(start + oldCount, newCount - oldCount);
+        } else if (newCount < oldCount) {
+            displayItems.subList(start + newCount, start + oldCount).clear();
+            notifyItemRangeRemoved(start + newCount, oldCount - newCount);
         }
     }
 
+    // Позиция строки задачи или -1
+    private int findTaskRow(Task task) {
+        if (task.getId() == null) return -1;
+        int position = lowerBound(task);
+        for (int i = position; i <= position + 1 && i < displayItems.size(); i++) { // Задача может стоять сразу за заголовком
+            RowModel item = displayItems.get(i);
+            if (item instanceof TaskRow && task.getId().equals(((TaskRow) item).getTaskId())) {
+                return i;
+            }
+        }
+        // Задачу могли изменить на месте (время уже другое) — запасной линейный поиск
+        return positionOfTask(task.getId());
+    }
+
+    // Первая позиция, задача которой не меньше task по (dateTime, id). Заголовок сравнивается по первой задаче своей группы
+    private int lowerBound(Task task) {
+        int low = 0;
+        int high = displayItems.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            RowModel item = displayItems.get(mid);
+            if (item instanceof HeaderRow && mid + 1 < displayItems.size()) {
+                item = displayItems.get(mid + 1);
+            } else if (item instanceof SubTaskRow) {
+                item = taskRowBefore(mid); // Подзадача сравнивается по своей задаче
+            }
+            if (item instanceof TaskRow && compareTasks(((TaskRow) item).task, task) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compareTasks(Task a, Task b) {
+        int byTime = Long.compare(timeOf(a), timeOf(b));
+        if (byTime != 0) return byTime;
+        String idA = a.getId() != null ? a.getId() : "";
+        String idB = b.getId() != null ? b.getId() : "";
+        return idA.compareTo(idB);
+    }
+
+    private static long timeOf(Task task) {
+        return task.getDateTime() != null ? task.getDateTime().getTime() : Long.MIN_VALUE;
+    }
+
+    // Замена строки задачи новой моделью с другим статусом выполнения (без форматирования)
+    private void updateTaskRowCompletion(String taskId, boolean completed) {
+        int position = positionOfTask(taskId);
+        if (position == RecyclerView.NO_POSITION) return;
+        displayItems.set(position, ((TaskRow) displayItems.get(position)).withCompleted(completed));
+        notifyItemChanged(position);
+    }
+
+    // --- Расчет и получение прогресса ---
+    // Передача прогресса в UI: счетчики уже актуальны, обхода списка нет.
+    // Несколько вызовов за кадр дают одну перерисовку индикатора
+    private void publishProgress() {
+        invalidator.invalidate(PROGRESS_KEY, () -> {
+            Log.d("AdapterProgress", "Расчет: Всего=" + progress.getTotalCount() + ", Выполнено=" + progress.getCompletedCount() + ", Прогресс=" + progress.getPercentage()); // Логирование
+            if (progressUpdateCallback != null) { // Проверка наличия callback
+                progressUpdateCallback.run(); // Вызов callback для обновления UI
+            }
+        });
+    }
+
+    // Счетчики перерисовок для диагностики
+    public FrameInvalidator getInvalidator() {
+        return invalidator;
+    }
+
+    // Учет доли выполненных подзадач в прогрессе невыполненных задач (настройка в SettingsActivity)
+    public void setProgressWeightedBySubTasks(boolean weighted) {
+        if (progress.isWeightedBySubTasks() == weighted) return;
+        progress.setWeightedBySubTasks(weighted);
+        publishProgress();
+    }
+
     // Геттеры для данных прогресса
-    public int getTotalTaskCount() { return totalTaskCount; } // Возвращает общее количество задач
-    public int getCompletedTaskCount() { return completedTaskCount; } // Возвращает количество выполненных задач
-    public int getCurrentProgressPercentage() { return currentProgressPercentage; } // Возвращает процент прогресса
+    public int getTotalTaskCount() { return progress.getTotalCount(); } // Возвращает общее количество задач
+    public int getCompletedTaskCount() { return progress.getCompletedCount(); } // Возвращает количество выполненных задач
+    public int getCurrentProgressPercentage() { return progress.getPercentage(); } // Возвращает процент прогресса
 
     // --- Переопределенные методы RecyclerView.Adapter ---
     // Определение типа элемента по позиции
     @Override
     public int getItemViewType(int position) {
         if (displayItems != null && position >= 0 && position < displayItems.size()) { // Проверка корректности позиции
-            Object item = displayItems.get(position); // Получение элемента
-            if (item instanceof Task) { // Если элемент — задача
+            RowModel item = displayItems.get(position); // Получение элемента
+            if (item instanceof TaskRow) { // Если элемент — задача
                 return VIEW_TYPE_TASK;
-            } else if (item instanceof String) { // Если элемент — заголовок даты
+            } else if (item instanceof HeaderRow) { // Если элемент — заголовок даты
                 return VIEW_TYPE_DATE_HEADER;
+            } else if (item instanceof SubTaskRow) { // Если элемент — подзадача плоского списка
+                return VIEW_TYPE_SUBTASK;
             }
         }
         return RecyclerView.INVALID_TYPE; // Возврат недопустимого типа для ошибочных случаев
     }
 
+    // Стабильный ID строки вычислен при построении модели
+    @Override
+    public long getItemId(int position) {
+        return displayItems.get(position).getStableId();
+    }
+
     // Создание ViewHolder для элемента
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long trace = UiTrace.begin(UiTrace.CREATE_TASK_ROW);
+        try {
+            return createRowHolder(parent, viewType);
+        } finally {
+            UiTrace.end(UiTrace.CREATE_TASK_ROW, trace);
+        }
+    }
+
+    private RecyclerView.ViewHolder createRowHolder(ViewGroup parent, int viewType) {
         LayoutInflater inflater = LayoutInflater.from(parent.getContext()); // Получение inflater для создания View
         if (viewType == VIEW_TYPE_TASK) { // Если тип — задача
             View v = inflater.inflate(R.layout.task_item, parent, false); // Загрузка макета задачи
@@ -125,6 +716,8 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         } else if (viewType == VIEW_TYPE_DATE_HEADER) { // Если тип — заголовок даты
             View v = inflater.inflate(R.layout.date_header_item, parent, false); // Загрузка макета заголовка
             return new DateHeaderViewHolder(v); // Возврат ViewHolder для заголовка
+        } else if (viewType == VIEW_TYPE_SUBTASK) { // Если тип — подзадача плоского списка
+            return new FlatSubTaskViewHolder(subTaskViews.obtainView(parent)); // Разметка из запаса, созданного в фоне
         }
         Log.e("TaskAdapter", "onCreateViewHolder called with invalid viewType: " + viewType); // Логирование ошибки
         return new RecyclerView.ViewHolder(new View(parent.getContext())) {}; // Возврат пустого ViewHolder
@@ -137,25 +730,69 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             Log.e("TaskAdapter", "onBindViewHolder called with invalid position: " + position); // Логирование ошибки
             return;
         }
-        Object item = displayItems.get(position); // Получение элемента
+        RowModel item = displayItems.get(position); // Получение элемента
         int viewType = getItemViewType(position); // Получение типа элемента
 
-        if (viewType == VIEW_TYPE_TASK && item instanceof Task) { // Если элемент — задача
-            ((TaskViewHolder) holder).bind((Task) item); // Привязка данных задачи
-        } else if (viewType == VIEW_TYPE_DATE_HEADER && item instanceof String) { // Если элемент — заголовок
-            ((DateHeaderViewHolder) holder).bind((String) item); // Привязка данных заголовка
+        if (viewType == VIEW_TYPE_TASK && holder instanceof TaskViewHolder) { // Если элемент — задача
+            ((TaskViewHolder) holder).bind((TaskRow) item); // Привязка данных задачи
+        } else if (viewType == VIEW_TYPE_DATE_HEADER && holder instanceof DateHeaderViewHolder) { // Если элемент — заголовок
+            ((DateHeaderViewHolder) holder).bind((HeaderRow) item); // Привязка данных заголовка
+        } else if (viewType == VIEW_TYPE_SUBTASK && holder instanceof FlatSubTaskViewHolder) { // Если элемент — подзадача
+            ((FlatSubTaskViewHolder) holder).bind((SubTaskRow) item); // Привязка данных подзадачи
         } else {
             Log.e("TaskAdapter", "onBindViewHolder: Mismatch between viewType (" + viewType + ") and item type or invalid position."); // Логирование ошибки
             holder.itemView.setVisibility(View.GONE); // Скрытие элемента при ошибке
         }
     }
 
+    // Частичная привязка: при изменении только подзадач строка задачи не перерисовывается целиком
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        long trace = UiTrace.begin(UiTrace.BIND_TASK_ROW);
+        try {
+            bindRow(holder, position, payloads);
+        } finally {
+            UiTrace.end(UiTrace.BIND_TASK_ROW, trace);
+        }
+    }
+
+    private void bindRow(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        boolean partial = !payloads.isEmpty() && holder instanceof TaskViewHolder && displayItems.get(position) instanceof TaskRow;
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SUBTASKS && payload != PAYLOAD_SELECTION) partial = false; // Полная перепривязка
+        }
+        if (partial) {
+            TaskViewHolder taskHolder = (TaskViewHolder) holder;
+            TaskRow row = (TaskRow) displayItems.get(position);
+            if (payloads.contains(PAYLOAD_SUBTASKS)) taskHolder.loadSubTasksOrUseCache(row.task);
+            if (payloads.contains(PAYLOAD_SELECTION)) taskHolder.bindSelection(selectedIds.contains(row.getTaskId()));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    // Строка ушла в пул переиспользования: ее задача больше не держит подписку на подзадачи
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof SubscribedViewHolder) {
+            ((SubscribedViewHolder) holder).detachSubTasks();
+        }
+        super.onViewRecycled(holder);
+    }
+
     // Возврат количества элементов
     @Override
     public int getItemCount() {
         return displayItems != null ? displayItems.size() : 0; // Возврат размера списка или 0
     }
 
+    // Задача строки в позиции или null, если там заголовок или позиция устарела
+    private Task taskAt(int position) {
+        if (position == RecyclerView.NO_POSITION || position >= displayItems.size()) return null;
+        RowModel item = displayItems.get(position);
+        return item instanceof TaskRow ? ((TaskRow) item).task : null;
+    }
+
     // --- ViewHolder для заголовка даты ---
     static class DateHeaderViewHolder extends RecyclerView.ViewHolder {
         TextView dateHeaderTextView; // Текстовое поле для заголовка даты
@@ -164,16 +801,125 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             dateHeaderTextView = itemView.findViewById(R.id.dateHeaderTextView); // Связывание с TextView
         }
         // Привязка текста заголовка
-        void bind(String dateText) {
+        void bind(HeaderRow header) {
             if (dateHeaderTextView != null) { // Проверка инициализации
-                dateHeaderTextView.setText(dateText); // Установка текста
+                dateHeaderTextView.setText(header.text); // Установка текста
                 itemView.setVisibility(View.VISIBLE); // Показ элемента
             }
         }
     }
 
+    // --- Строка, держащая ссылку реестра на подзадачи своей задачи ---
+    abstract class SubscribedViewHolder extends RecyclerView.ViewHolder {
+        private String subscribedTaskId; // Задача, на подзадачи которой строка держит ссылку в реестре
+
+        SubscribedViewHolder(@NonNull View itemView) {
+            super(itemView);
+        }
+
+        // Перенос ссылки реестра на подзадачи другой задачи при перепривязке строки
+        void attachSubTasks(String taskId) {
+            if (subTaskSubscriptions == null || Objects.equals(taskId, subscribedTaskId)) return;
+            detachSubTasks();
+            subTaskSubscriptions.acquire(taskId);
+            subscribedTaskId = taskId;
+            loadStoredSubTasks(taskId); // Пока подписка не ответила, подзадачи берутся из хранилища
+        }
+
+        void detachSubTasks() {
+            if (subTaskSubscriptions == null || subscribedTaskId == null) return;
+            subTaskSubscriptions.release(subscribedTaskId);
+            subscribedTaskId = null;
+        }
+    }
+
+    // --- ViewHolder для подзадачи плоского списка ---
+    class FlatSubTaskViewHolder extends SubscribedViewHolder {
+        private final CheckBox checkBox; // Чекбокс выполнения подзадачи
+        private final TextView descriptionTextView; // Описание подзадачи
+        private SubTaskRow currentRow; // Текущая привязанная подзадача
+        private boolean bindingCheckBox = false; // Чекбокс меняется программно
+
+        FlatSubTaskViewHolder(@NonNull View itemView) {
+            super(itemView);
+            checkBox = itemView.findViewById(R.id.subTaskCheckBox);
+            descriptionTextView = itemView.findViewById(R.id.subTaskTextView);
+            ImageButton deleteButton = itemView.findViewById(R.id.deleteSubTaskButton);
+
+            deleteButton.setOnClickListener(v -> {
+                if (currentRow != null) deleteFlatSubTask(currentRow);
+            });
+            checkBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                if (bindingCheckBox || currentRow == null) return;
+                updateFlatSubTaskCompletion(currentRow, isChecked);
+            });
+        }
+
+        void bind(SubTaskRow row) {
+            currentRow = row;
+            attachSubTasks(row.taskId); // Подзадачи обновляются, пока видна хотя бы одна их строка
+            descriptionTextView.setText(row.text);
+            descriptionTextView.setPaintFlags(row.completed
+                    ? descriptionTextView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG
+                    : descriptionTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+            bindingCheckBox = true;
+            checkBox.setChecked(row.completed);
+            bindingCheckBox = false;
+        }
+    }
+
+    // Оптимистичная смена статуса подзадачи плоского списка: новый список в кэш, откат при ошибке
+    private void updateFlatSubTaskCompletion(SubTaskRow row, boolean isCompleted) {
+        String subTaskId = row.getSubTaskId();
+        if (row.taskId == null || subTaskId == null || subTaskId.isEmpty()) {
+            Log.e("TaskAdapter", "Cannot update flat subtask without task or subtask ID"); // Логирование ошибки
+            int position = displayItems.indexOf(row);
+            if (position >= 0) notifyItemChanged(position); // Возврат чекбокса
+            return;
+        }
+        onSubTasksLoaded(row.taskId, withSubTaskCompleted(cachedSubTasks(row.taskId), subTaskId, isCompleted));
+        writeQueue.set(db.collection("tasks").document(row.taskId).collection("subtasks").document(subTaskId),
+                SubTaskCodec.FIELD_IS_COMPLETED, isCompleted, row.completed, e -> {
+                    Log.e("FirestoreError", "Ошибка обновления статуса подзадачи: " + e.getMessage()); // Логирование ошибки
+                    Toast.makeText(context, "Ошибка обновления статуса", Toast.LENGTH_SHORT).show(); // Уведомление
+                    onSubTasksLoaded(row.taskId, withSubTaskCompleted(cachedSubTasks(row.taskId), subTaskId, !isCompleted)); // Откат
+                });
+    }
+
+    // Удаление подзадачи плоского списка; строки обновляются через кэш
+    private void deleteFlatSubTask(SubTaskRow row) {
+        String subTaskId = row.getSubTaskId();
+        if (row.taskId == null || subTaskId == null || subTaskId.isEmpty()) return;
+        outbox.delete("delete-subtask", db.collection("tasks").document(row.taskId).collection("subtasks").document(subTaskId))
+                .addOnSuccessListener(aVoid -> Log.d("Firestore", "Подзадача удалена: " + row.text)) // Логирование подтверждения
+                .addOnFailureListener(e -> {
+                    Log.e("FirestoreError", "Ошибка удаления подзадачи: " + e.getMessage()); // Логирование ошибки
+                    Toast.makeText(context, "Ошибка удаления подзадачи", Toast.LENGTH_SHORT).show(); // Уведомление
+                });
+        List<SubTask> remaining = new ArrayList<>(); // Строка убирается сразу; при ошибке подзадачу вернет подписка
+        for (SubTask subTask : cachedSubTasks(row.taskId)) {
+            if (!subTaskId.equals(subTask.getSubTaskId())) remaining.add(subTask);
+        }
+        onSubTasksLoaded(row.taskId, remaining);
+    }
+
+    // Копия списка подзадач, в которой у одной подзадачи другой статус (объекты в кэше не меняются)
+    private static List<SubTask> withSubTaskCompleted(List<SubTask> subTasks, String subTaskId, boolean isCompleted) {
+        List<SubTask> updated = new ArrayList<>(subTasks.size());
+        for (SubTask subTask : subTasks) {
+            if (subTaskId.equals(subTask.getSubTaskId()) && subTask.isCompleted() != isCompleted) {
+                SubTask copy = new SubTask(subTask.getDescription(), isCompleted);
+                copy.setSubTaskId(subTaskId);
+                updated.add(copy);
+            } else {
+                updated.add(subTask);
+            }
+        }
+        return updated;
+    }
+
     // --- ViewHolder для задачи ---
-    class TaskViewHolder extends RecyclerView.ViewHolder {
+    class TaskViewHolder extends SubscribedViewHolder {
         // Элементы UI задачи
         private final TextView taskTextView; // Текст описания задачи
         private final CheckBox taskCheckBox; // Чекбокс для отметки выполнения
@@ -182,8 +928,10 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         private final ImageButton expandButton; // Кнопка раскрытия подзадач
         private final ImageButton addSubTaskButton; // Кнопка добавления подзадачи
         private final RecyclerView subTaskRecyclerView; // Список подзадач
+        private final LinearLayoutManager subTaskLayoutManager; // Менеджер компоновки списка подзадач
         private SubTaskAdapter subTaskAdapter; // Адаптер для подзадач
         private Task currentTask; // Текущая привязанная задача
+        private boolean bindingCheckBox = false; // Чекбокс меняется программно
 
         // Конструктор ViewHolder
         public TaskViewHolder(@NonNull View itemView) {
@@ -196,6 +944,7 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             expandButton = itemView.findViewById(R.id.expandButton);
             addSubTaskButton = itemView.findViewById(R.id.addSubTaskButton);
             subTaskRecyclerView = itemView.findViewById(R.id.subTaskRecyclerView);
+            subTaskLayoutManager = new LinearLayoutManager(context);
 
             // Проверка инициализации всех элементов UI
             if (taskTextView == null || taskCheckBox == null || deleteButton == null ||
@@ -206,94 +955,76 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             }
 
             // Инициализация адаптера для подзадач
-            subTaskAdapter = new SubTaskAdapter(new ArrayList<>(), TaskAdapter.this::calculateProgress, context, null, () -> {
+            subTaskAdapter = new SubTaskAdapter(new ArrayList<>(), TaskAdapter.this::publishProgress, context, null, writeQueue, () -> {
                 if (currentTask != null) { // Проверка, что задача существует
-                    List<SubTask> updatedSubTasks = subTasksCache.getOrDefault(currentTask.getId(), new ArrayList<>());
+                    List<SubTask> updatedSubTasks = subTaskAdapter.getSubTasks(); // Подзадачи после локального изменения
                     updateButtonVisibility(currentTask, updatedSubTasks); // Обновление видимости кнопок
                     updateExpandedState(currentTask, updatedSubTasks); // Обновление состояния раскрытия
-                    TaskAdapter.this.calculateProgress(); // Пересчет прогресса
+                    onSubTasksLoaded(currentTask.getId(), updatedSubTasks); // Кэш и вклад задачи в прогресс
                 }
             });
 
             // Настройка RecyclerView для подзадач
-            subTaskRecyclerView.setLayoutManager(new LinearLayoutManager(context)); // Установка линейного менеджера
+            subTaskRecyclerView.setLayoutManager(subTaskLayoutManager); // Установка линейного менеджера
+            subTaskAdapter.setViewPool(subTaskViews); // Строки из запаса готовых разметок
+            subTaskViews.attach(subTaskRecyclerView, subTaskLayoutManager); // Строки подзадач общие для всех задач
             subTaskRecyclerView.setAdapter(subTaskAdapter); // Установка адаптера
 
             // Обработчик удаления задачи
             deleteButton.setOnClickListener(v -> {
-                int position = getBindingAdapterPosition(); // Получение текущей позиции
-                if (position != RecyclerView.NO_POSITION && displayItems.get(position) instanceof Task) {
-                    removeTaskWithConfirmation((Task) displayItems.get(position)); // Запуск удаления с подтверждением
+                Task task = taskAt(getBindingAdapterPosition()); // Задача текущей позиции
+                if (task != null) {
+                    removeTaskWithConfirmation(task); // Запуск удаления с подтверждением
                 }
             });
 
             // Обработчик редактирования задачи
             editButton.setOnClickListener(v -> {
-                int position = getBindingAdapterPosition(); // Получение текущей позиции
-                if (position != RecyclerView.NO_POSITION && displayItems.get(position) instanceof Task) {
-                    showEditTaskDialog((Task) displayItems.get(position)); // Отображение диалога редактирования
+                Task task = taskAt(getBindingAdapterPosition()); // Задача текущей позиции
+                if (task != null) {
+                    showEditTaskDialog(task); // Отображение диалога редактирования
                 }
             });
 
             // Обработчик добавления подзадачи
             addSubTaskButton.setOnClickListener(v -> {
-                int position = getBindingAdapterPosition(); // Получение текущей позиции
-                if (position != RecyclerView.NO_POSITION && displayItems.get(position) instanceof Task) {
-                    showAddSubTaskDialog((Task) displayItems.get(position)); // Отображение диалога добавления подзадачи
+                Task task = taskAt(getBindingAdapterPosition()); // Задача текущей позиции
+                if (task != null) {
+                    showAddSubTaskDialog(task); // Отображение диалога добавления подзадачи
                 }
             });
 
             // Обработчик раскрытия/сворачивания подзадач
             expandButton.setOnClickListener(v -> {
-                int position = getBindingAdapterPosition(); // Получение текущей позиции
-                if (position != RecyclerView.NO_POSITION && displayItems.get(position) instanceof Task) {
-                    toggleExpandState((Task) displayItems.get(position)); // Переключение состояния раскрытия
+                Task task = taskAt(getBindingAdapterPosition()); // Задача текущей позиции
+                if (task != null) {
+                    toggleExpandState(task); // Переключение состояния раскрытия
                 }
             });
-        }
 
-        // Привязка данных задачи к ViewHolder
-        public void bind(Task task) {
-            if (task == null) { // Проверка, что задача не null
-                Log.e("TaskViewHolder", "bind called with null task!"); // Логирование ошибки
-                itemView.setVisibility(View.GONE); // Скрытие элемента
-                return;
-            }
-            itemView.setVisibility(View.VISIBLE); // Показ элемента
-            this.currentTask = task; // Сохранение текущей задачи
-            Log.d("TaskBind", "Binding task: " + task.getDescription() + " ID: " + task.getId()); // Логирование привязки
-
-            // Установка ID задачи в адаптер подзадач
-            subTaskAdapter.setTaskId(task.getId());
-            Log.d("TaskBind", "Set SubTaskAdapter TaskID to: " + task.getId());
-
-            // Загрузка подзадач из кэша или Firestore
-            loadSubTasksOrUseCache(task);
-
-            // Сброс слушателя чекбокса перед установкой значения
-            taskCheckBox.setOnCheckedChangeListener(null);
-            taskCheckBox.setChecked(task.isCompleted()); // Установка состояния чекбокса
-
-            // Формирование текста задачи с датой
-            String dateTimeStr = task.getDateTime() != null ? taskDateFormat.format(task.getDateTime()) : "Нет даты";
-            taskTextView.setText(task.getDescription() + " (" + dateTimeStr + ")"); // Установка текста
-            // Применение зачеркивания для выполненных задач
-            taskTextView.setPaintFlags(task.isCompleted()
-                    ? taskTextView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG
-                    : taskTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+            // Долгое нажатие — выбор задачи (вход в режим выбора); в режиме выбора выбор меняется обычным нажатием
+            itemView.setOnLongClickListener(v -> {
+                Task task = taskAt(getBindingAdapterPosition());
+                if (task == null) return false;
+                toggleSelection(task);
+                return true;
+            });
+            itemView.setOnClickListener(v -> {
+                Task task = taskAt(getBindingAdapterPosition());
+                if (task != null && isSelectionMode()) toggleSelection(task);
+            });
 
-            // Установка слушателя изменения состояния чекбокса
+            // Обработчик чекбокса создается один раз; задача берется из текущей привязки
             taskCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                int currentPosition = getBindingAdapterPosition(); // Получение текущей позиции
-                if (currentPosition != RecyclerView.NO_POSITION &&
-                        displayItems.get(currentPosition) instanceof Task &&
-                        ((Task)displayItems.get(currentPosition)).getId().equals(task.getId())) { // Проверка актуальности
-                    List<SubTask> currentSubTasks = subTasksCache.getOrDefault(task.getId(), new ArrayList<>()); // Получение подзадач
+                if (bindingCheckBox) return; // Изменение состояния при привязке, а не пользователем
+                Task task = taskAt(getBindingAdapterPosition());
+                if (task != null && currentTask != null && task.getId().equals(currentTask.getId())) { // Проверка актуальности
+                    List<SubTask> currentSubTasks = cachedSubTasks(task.getId()); // Получение подзадач
                     if (isChecked) { // Если задача отмечена как выполненная
                         boolean allSubTasksCompleted = currentSubTasks.stream().allMatch(SubTask::isCompleted); // Проверка подзадач
                         if (!allSubTasksCompleted) { // Если есть невыполненные подзадачи
                             Toast.makeText(context, "Сначала выполните все подзадачи!", Toast.LENGTH_SHORT).show(); // Уведомление
-                            buttonView.setChecked(false); // Отмена отметки
+                            setCheckedSilently(false); // Отмена отметки
                             return;
                         }
                     }
@@ -304,25 +1035,61 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             });
         }
 
+        // Привязка готовой модели строки: только присваивания, без форматирования и конкатенаций
+        public void bind(TaskRow row) {
+            itemView.setVisibility(View.VISIBLE); // Показ элемента
+            this.currentTask = row.task; // Сохранение текущей задачи
+
+            subTaskAdapter.setTaskId(row.getTaskId()); // Установка ID задачи в адаптер подзадач
+            attachSubTasks(row.getTaskId()); // Ссылка на подписку подзадач этой задачи
+            loadSubTasksOrUseCache(row.task); // Подзадачи из кэша
+
+            setCheckedSilently(row.completed); // Установка состояния чекбокса
+            taskTextView.setText(row.text); // Текст сформирован при построении модели
+            // Применение зачеркивания для выполненных задач
+            taskTextView.setPaintFlags(row.completed
+                    ? taskTextView.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG
+                    : taskTextView.getPaintFlags() & (~Paint.STRIKE_THRU_TEXT_FLAG));
+            bindSelection(selectedIds.contains(row.getTaskId()));
+        }
+
+        // Подсветка выбранной задачи фоном карточки
+        void bindSelection(boolean selected) {
+            if (itemView instanceof CardView) {
+                ((CardView) itemView).setCardBackgroundColor(selected ? COLOR_TASK_CARD_SELECTED : COLOR_TASK_CARD);
+            }
+            itemView.setActivated(selected);
+        }
+
+        // Установка состояния чекбокса без вызова обработчика
+        private void setCheckedSilently(boolean checked) {
+            bindingCheckBox = true;
+            taskCheckBox.setChecked(checked);
+            bindingCheckBox = false;
+        }
+
         // Переключение состояния раскрытия подзадач
         private void toggleExpandState(Task task) {
-            List<SubTask> currentSubTasks = subTasksCache.getOrDefault(task.getId(), new ArrayList<>()); // Получение подзадач
+            List<SubTask> currentSubTasks = cachedSubTasks(task.getId()); // Получение подзадач
             if (!currentSubTasks.isEmpty()) { // Если есть подзадачи
-                task.setExpanded(!task.isExpanded()); // Инверсия состояния раскрытия
-                Log.d("Expand", "Task " + task.getDescription() + " expanded: " + task.isExpanded()); // Логирование
+                boolean expanded = !uiState.isExpanded(task.getId()); // Инверсия состояния раскрытия
+                uiState.setExpanded(task.getId(), expanded); // Только локальное состояние: без записи в Firestore
+                Log.d("Expand", "Task " + task.getDescription() + " expanded: " + expanded); // Логирование
                 updateExpandedState(task, currentSubTasks); // Обновление UI
-
-                // Обновление состояния в Firestore
-                db.collection("tasks").document(task.getId())
-                        .update("isExpanded", task.isExpanded())
-                        .addOnSuccessListener(aVoid -> Log.d("Firestore", "isExpanded обновлено: " + task.isExpanded())) // Логирование успеха
-                        .addOnFailureListener(e -> Log.e("FirestoreError", "Ошибка обновления isExpanded: " + e.getMessage())); // Логирование ошибки
+                syncFlatSubTasksOf(task); // Вставка или удаление строк подзадач плоского списка
             } else {
-                task.setExpanded(false); // Сброс состояния, если подзадач нет
+                uiState.setExpanded(task.getId(), false); // Сброс состояния, если подзадач нет
                 updateExpandedState(task, currentSubTasks); // Обновление UI
+                syncFlatSubTasksOf(task);
             }
         }
 
+        private void syncFlatSubTasksOf(Task task) {
+            if (!flatSubTasks) return;
+            int position = positionOfTask(task.getId());
+            if (position != RecyclerView.NO_POSITION) syncFlatSubTasks(position);
+        }
+
         // Загрузка подзадач из кэша или Firestore
         private void loadSubTasksOrUseCache(Task task) {
             if (task == null || task.getId() == null) { // Проверка валидности задачи
@@ -331,63 +1098,17 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             }
             List<SubTask> cachedSubTasks = subTasksCache.get(task.getId()); // Получение подзадач из кэша
             if (cachedSubTasks != null) { // Если кэш существует
-                Log.d("SubTaskLoad", "Using cache for task: " + task.getId() + ", count: " + cachedSubTasks.size()); // Логирование
                 updateUIForSubtasks(task, cachedSubTasks); // Обновление UI
-            } else { // Если кэша нет
-                Log.d("SubTaskLoad", "No cache, loading from Firestore for task: " + task.getId()); // Логирование
-                loadSubTasksFromFirestore(task); // Загрузка из Firestore
-            }
-        }
-
-        // Загрузка подзадач из Firestore
-        private void loadSubTasksFromFirestore(Task task) {
-            if (task == null || task.getId() == null || task.getId().isEmpty()) { // Проверка валидности задачи
-                Log.e("FirestoreError", "Cannot load subtasks: invalid task ID."); // Логирование ошибки
+            } else { // Если кэша нет — подзадачи придут из общей подписки SubTaskFeed
                 updateUIForSubtasks(task, new ArrayList<>()); // Обновление UI с пустым списком
-                return;
             }
-            String taskId = task.getId(); // Получение ID задачи
-
-            // Запрос подзадач из Firestore с поддержкой SnapshotListener
-            db.collection("tasks").document(taskId).collection("subtasks")
-                    .addSnapshotListener(MetadataChanges.INCLUDE, (querySnapshot, error) -> {
-                        if (currentTask == null || !taskId.equals(currentTask.getId())) { // Проверка актуальности ViewHolder
-                            Log.w("SubTaskLoad", "ViewHolder reused, ignoring Firestore result for task: " + taskId); // Логирование
-                            return;
-                        }
-                        if (error != null) { // Проверка на ошибки
-                            Log.e("FirestoreError", "Error loading subtasks for task " + taskId + ": " + error.getMessage()); // Логирование ошибки
-                            updateUIForSubtasks(currentTask, new ArrayList<>()); // Обновление UI с пустым списком
-                            return;
-                        }
-
-                        List<SubTask> loadedSubTasks = new ArrayList<>(); // Список для хранения подзадач
-                        if (querySnapshot != null) { // Проверка наличия данных
-                            boolean fromCache = querySnapshot.getMetadata().isFromCache(); // Проверка, из кэша ли данные
-                            for (QueryDocumentSnapshot doc : querySnapshot) { // Обработка документов
-                                try {
-                                    SubTask st = doc.toObject(SubTask.class); // Преобразование в объект SubTask
-                                    st.setSubTaskId(doc.getId()); // Установка ID подзадачи
-                                    loadedSubTasks.add(st); // Добавление в список
-                                } catch (Exception e) {
-                                    Log.e("SubTaskLoad", "Error converting subtask document " + doc.getId() + " for task " + taskId + ": " + e.getMessage()); // Логирование ошибки
-                                }
-                            }
-                            subTasksCache.put(taskId, new ArrayList<>(loadedSubTasks)); // Обновление кэша
-                            Log.d("SubTaskLoad", "Firestore snapshot update for task: " + taskId + ", count: " + loadedSubTasks.size() + ", fromCache=" + fromCache); // Логирование
-                            updateUIForSubtasks(currentTask, loadedSubTasks); // Обновление UI
-                        } else {
-                            subTasksCache.put(taskId, new ArrayList<>()); // Установка пустого кэша
-                            updateUIForSubtasks(currentTask, new ArrayList<>()); // Обновление UI
-                        }
-                    });
         }
 
         // Обновление UI для подзадач
         private void updateUIForSubtasks(Task task, List<SubTask> subTasks) {
             if (task == null) return; // Проверка валидности задачи
             List<SubTask> subTasksCopy = new ArrayList<>(subTasks != null ? subTasks : new ArrayList<>()); // Копия списка подзадач
-            subTaskAdapter.setSubTasks(subTasksCopy); // Установка подзадач в адаптер
+            subTaskAdapter.setSubTasks(flatSubTasks ? new ArrayList<>() : subTasksCopy); // В плоском режиме подзадачи — строки общего списка
             updateButtonVisibility(task, subTasksCopy); // Обновление видимости кнопок
             updateExpandedState(task, subTasksCopy); // Обновление состояния раскрытия
         }
@@ -406,10 +1127,12 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         private void updateExpandedState(Task task, List<SubTask> subTasks) {
             if (task == null || subTaskRecyclerView == null || expandButton == null) return; // Проверка инициализации
             boolean hasSubtasks = subTasks != null && !subTasks.isEmpty(); // Проверка наличия подзадач
-            boolean shouldBeVisible = hasSubtasks && task.isExpanded(); // Проверка, нужно ли показывать подзадачи
+            boolean expanded = uiState.isExpanded(task.getId());
+            boolean shouldBeVisible = !flatSubTasks && hasSubtasks && expanded; // Проверка, нужно ли показывать вложенный список
             subTaskRecyclerView.setVisibility(shouldBeVisible ? View.VISIBLE : View.GONE); // Показ/скрытие списка подзадач
+            SubTaskViewPool.tunePrefetch(subTaskLayoutManager, subTasks != null ? subTasks.size() : 0, shouldBeVisible); // Предзагрузка строк раскрытого списка
             // Установка иконки кнопки раскрытия
-            expandButton.setImageResource(task.isExpanded()
+            expandButton.setImageResource(expanded
                     ? android.R.drawable.arrow_up_float
                     : android.R.drawable.arrow_down_float);
         }
@@ -422,102 +1145,66 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             new AlertDialog.Builder(context)
                     .setTitle("Удалить задачу?") // Установка заголовка
                     .setMessage("Удалить \"" + task.getDescription() + "\" и все её подзадачи?") // Установка сообщения
-                    .setPositiveButton("Удалить", (dialog, which) -> deleteTaskAndSubtasks(taskId)) // Обработчик удаления
+                    .setPositiveButton("Удалить", (dialog, which) -> taskDeleter.delete(taskId)) // Каскадное удаление задачи с подзадачами
                     .setNegativeButton("Отмена", null) // Обработчик отмены
                     .show(); // Отображение диалога
         }
 
-        // Удаление задачи и её подзадач
-        private void deleteTaskAndSubtasks(String taskId) {
-            if (taskId == null || taskId.isEmpty()) return; // Проверка валидности ID
-            Log.d("FirestoreDelete", "Starting deletion for task ID: " + taskId); // Логирование начала удаления
-            WriteBatch batch = db.batch(); // Создание пакета операций
-            batch.delete(db.collection("tasks").document(taskId)); // Добавление операции удаления задачи
-
-            // Получение подзадач для удаления
-            db.collection("tasks").document(taskId).collection("subtasks").get()
-                    .addOnCompleteListener(subtaskQueryTask -> {
-                        if (subtaskQueryTask.isSuccessful()) { // Проверка успешности запроса
-                            for (QueryDocumentSnapshot doc : subtaskQueryTask.getResult()) { // Перебор подзадач
-                                batch.delete(doc.getReference()); // Добавление операции удаления подзадачи
-                                Log.d("FirestoreDelete", "Added subtask deletion to batch: " + doc.getId()); // Логирование
-                            }
-                        } else {
-                            Log.e("FirestoreDelete", "Failed to get subtasks for deletion: ", subtaskQueryTask.getException()); // Логирование ошибки
-                        }
-                        // Выполнение пакета операций
-                        batch.commit().addOnSuccessListener(aVoid -> {
-                            Log.d("FirestoreDelete", "Batch delete successful for task ID: " + taskId); // Логирование успеха
-                            handleSuccessfulDeletionUI(taskId); // Обновление UI
-                        }).addOnFailureListener(e -> {
-                            Log.e("FirestoreDelete", "Batch delete failed for task ID: " + taskId, e); // Логирование ошибки
-                            Toast.makeText(context, "Ошибка удаления задачи", Toast.LENGTH_SHORT).show(); // Уведомление
-                        });
-                    });
-        }
-
-        // Обработка успешного удаления в UI
-        private void handleSuccessfulDeletionUI(String taskId) {
-            subTasksCache.remove(taskId); // Удаление подзадач из кэша
-            Log.d("AdapterRemove", "Task deleted from Firestore, ID: " + taskId + ". SnapshotListener will update UI."); // Логирование
-            calculateProgress(); // Пересчет прогресса
-        }
-
-        // Обновление статуса выполнения задачи
+        // Обновление статуса выполнения задачи: интерфейс меняется сразу, записи уходят через очередь,
+        // поэтому быстрые повторные переключения дают одну запись итогового значения (или ни одной)
         private void updateTaskCompletion(Task task, boolean isCompleted, List<SubTask> subTasks) {
             if (task == null || task.getId() == null) return; // Проверка валидности задачи
             String taskId = task.getId(); // Получение ID задачи
+            boolean wasCompleted = task.isCompleted(); // Значение до переключения
             task.setCompleted(isCompleted); // Обновление статуса задачи
+            progress.setCompleted(taskId, isCompleted);
+            updateTaskRowCompletion(taskId, isCompleted); // Модель строки с новым статусом
 
-            WriteBatch batch = db.batch(); // Создание пакета операций
-            batch.update(db.collection("tasks").document(taskId), "isCompleted", isCompleted); // Обновление статуса в Firestore
+            writeQueue.set(db.collection("tasks").document(taskId), TaskCodec.FIELD_IS_COMPLETED, isCompleted, wasCompleted, e -> {
+                Log.e("FirestoreUpdate", "Failed to update task status: " + e.getMessage()); // Логирование ошибки
+                Toast.makeText(context, "Ошибка обновления статуса", Toast.LENGTH_SHORT).show(); // Уведомление
+                task.setCompleted(!isCompleted); // Откат статуса
+                progress.setCompleted(taskId, !isCompleted);
+                updateTaskRowCompletion(taskId, !isCompleted); // Возврат модели строки
+                publishProgress(); // Передача прогресса в UI
+            });
 
-            List<SubTask> subTasksToUpdateLocally = new ArrayList<>(); // Список подзадач для локального обновления
             if (isCompleted && subTasks != null && !subTasks.isEmpty()) { // Если задача завершена и есть подзадачи
-                for (SubTask subTask : subTasks) { // Перебор подзадач
-                    if (!subTask.isCompleted()) { // Если подзадача не завершена
-                        subTasksToUpdateLocally.add(subTask); // Добавление в список
-                        if (subTask.getSubTaskId() != null && !subTask.getSubTaskId().isEmpty()) {
-                            // Обновление статуса подзадачи в Firestore
-                            batch.update(db.collection("tasks").document(taskId).collection("subtasks").document(subTask.getSubTaskId()), "isCompleted", true);
-                        }
+                // Локальное обновление подзадач новыми объектами, чтобы дифф увидел изменение.
+                // Записи подзадач попадают в тот же пакет очереди, что и запись задачи; при ошибке
+                // их состояние восстановит подписка на подзадачи
+                List<SubTask> updatedSubTasks = new ArrayList<>(subTasks.size());
+                boolean changed = false;
+                for (SubTask subTask : subTasks) {
+                    if (subTask.isCompleted()) {
+                        updatedSubTasks.add(subTask);
+                        continue;
                     }
-                }
-            }
-
-            // Выполнение пакета операций
-            batch.commit().addOnSuccessListener(aVoid -> {
-                Log.d("FirestoreUpdate", "Task status updated: " + task.getDescription() + " -> " + isCompleted); // Логирование успеха
-                if (isCompleted && !subTasksToUpdateLocally.isEmpty()) { // Если есть подзадачи для обновления
-                    for (SubTask subTask : subTasksToUpdateLocally) { // Локальное обновление подзадач
-                        subTask.setCompleted(true);
+                    SubTask completed = new SubTask(subTask.getDescription(), true);
+                    completed.setSubTaskId(subTask.getSubTaskId());
+                    updatedSubTasks.add(completed);
+                    changed = true;
+                    if (subTask.getSubTaskId() != null && !subTask.getSubTaskId().isEmpty()) {
+                        writeQueue.set(db.collection("tasks").document(taskId).collection("subtasks").document(subTask.getSubTaskId()),
+                                SubTaskCodec.FIELD_IS_COMPLETED, true, false, null);
                     }
-                    subTasksCache.put(taskId, new ArrayList<>(subTasks)); // Обновление кэша
-                    subTaskAdapter.setSubTasks(new ArrayList<>(subTasks)); // Обновление адаптера
                 }
-
-                int position = findTaskPosition(taskId); // Поиск позиции задачи
-                if (position != RecyclerView.NO_POSITION) { // Если позиция найдена
-                    notifyItemChanged(position); // Уведомление об изменении
+                if (changed) {
+                    subTasksCache.put(taskId, new ArrayList<>(updatedSubTasks)); // Обновление кэша
+                    progress.setSubTasks(taskId, updatedSubTasks);
+                    subTaskAdapter.setSubTasks(updatedSubTasks); // Обновление адаптера
                 }
-                calculateProgress(); // Пересчет прогресса
-            }).addOnFailureListener(e -> {
-                Log.e("FirestoreUpdate", "Failed to update task status: " + e.getMessage()); // Логирование ошибки
-                Toast.makeText(context, "Ошибка обновления статуса", Toast.LENGTH_SHORT).show(); // Уведомление
-                task.setCompleted(!isCompleted); // Откат статуса
-                int position = findTaskPosition(taskId); // Поиск позиции
-                if (position != RecyclerView.NO_POSITION) { // Если позиция найдена
-                    notifyItemChanged(position); // Уведомление об изменении
-                }
-                calculateProgress(); // Пересчет прогресса
-            });
+            }
+            publishProgress(); // Передача прогресса в UI
         }
 
         // Показ диалога редактирования задачи
         private void showEditTaskDialog(Task task) {
             if (task == null || task.getId() == null) return; // Проверка валидности задачи
             AlertDialog.Builder builder = new AlertDialog.Builder(context); // Создание конструктора диалога
+            long trace = UiTrace.begin(UiTrace.INFLATE_EDIT_TASK);
             View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_add_task, null); // Загрузка макета
+            UiTrace.end(UiTrace.INFLATE_EDIT_TASK, trace);
             builder.setView(dialogView); // Установка макета
 
             // Инициализация элементов диалога
@@ -566,27 +1253,27 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 }
                 Date newDate = calendar.getTime(); // Получение новой даты
 
-                // Обновление задачи в Firestore
-                db.collection("tasks").document(task.getId())
-                        .update("description", newDesc, "dateTime", newDate)
-                        .addOnSuccessListener(aVoid -> {
-                            Log.d("Firestore", "Task edited: " + task.getId()); // Логирование успеха
-                            if (context instanceof MainMenuActivity) { // Проверка контекста
-                                ((MainMenuActivity) context).updateView(); // Обновление UI
-                            } else {
-                                task.setDescription(newDesc); // Локальное обновление
-                                task.setDateTime(newDate);
-                                int pos = findTaskPosition(task.getId()); // Поиск позиции
-                                if (pos != -1) notifyItemChanged(pos); // Уведомление об изменении
-                                calculateProgress(); // Пересчет прогресса
-                            }
-                            dialog.dismiss(); // Закрытие диалога
-                            Toast.makeText(context, "Задача сохранена", Toast.LENGTH_SHORT).show(); // Уведомление
-                        })
+                // Обновление задачи через журнал записей; интерфейс не ждет ответа сервера
+                Map<String, Object> fields = new HashMap<>();
+                fields.put(TaskCodec.FIELD_DESCRIPTION, newDesc);
+                fields.put(TaskCodec.FIELD_DATE_TIME, newDate);
+                outbox.update("edit-task", db.collection("tasks").document(task.getId()), fields)
+                        .addOnSuccessListener(aVoid -> Log.d("Firestore", "Task edited: " + task.getId())) // Логирование подтверждения
                         .addOnFailureListener(e -> {
                             Log.e("FirestoreError", "Error editing task: " + e.getMessage()); // Логирование ошибки
                             Toast.makeText(context, "Ошибка редактирования", Toast.LENGTH_SHORT).show(); // Уведомление
                         });
+                if (context instanceof MainMenuActivity) { // Проверка контекста
+                    ((MainMenuActivity) context).updateView(); // Обновление UI
+                } else {
+                    Task edited = new Task(task.getUserId(), newDesc, newDate); // Новая версия задачи
+                    edited.setId(task.getId());
+                    edited.setCompleted(task.isCompleted());
+                    edited.setReminderTime(task.getReminderTime());
+                    applyTaskChanges(Collections.singletonList(new TaskIndex.Change(task, edited))); // Строка перестраивается в фоне
+                }
+                dialog.dismiss(); // Закрытие диалога
+                Toast.makeText(context, "Задача сохранена", Toast.LENGTH_SHORT).show(); // Уведомление
             });
             dialog.show(); // Отображение диалога
         }
@@ -595,7 +1282,9 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         private void showAddSubTaskDialog(Task task) {
             if (task == null || task.getId() == null) return; // Проверка валидности задачи
             AlertDialog.Builder builder = new AlertDialog.Builder(context); // Создание конструктора диалога
+            long trace = UiTrace.begin(UiTrace.INFLATE_ADD_SUBTASK);
             View dialogView = LayoutInflater.from(context).inflate(R.layout.dialog_add_subtask, null); // Загрузка макета
+            UiTrace.end(UiTrace.INFLATE_ADD_SUBTASK, trace);
             builder.setView(dialogView); // Установка макета
             builder.setTitle("Добавить подзадачу"); // Установка заголовка
 
@@ -614,51 +1303,33 @@ public class TaskAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
                 }
 
                 // Создание данных подзадачи
-                Map<String, Object> subTaskData = new HashMap<>();
-                subTaskData.put("description", description); // Описание подзадачи
-                subTaskData.put("isCompleted", false); // Статус выполнения
-
-                // Добавление подзадачи в Firestore
-                db.collection("tasks").document(task.getId()).collection("subtasks")
-                        .add(subTaskData)
-                        .addOnSuccessListener(docRef -> {
-                            Log.d("Firestore", "Subtask added: " + docRef.getId() + " to task " + task.getId()); // Логирование успеха
-                            SubTask newSubTask = new SubTask(description, false); // Создание новой подзадачи
-                            newSubTask.setSubTaskId(docRef.getId()); // Установка ID
-
-                            // Обновление кэша
-                            List<SubTask> currentSubTasks = subTasksCache.computeIfAbsent(task.getId(), k -> new ArrayList<>());
-                            currentSubTasks.add(newSubTask);
-                            subTasksCache.put(task.getId(), currentSubTasks);
-
-                            if (!task.isExpanded()) { // Если задача не раскрыта
-                                task.setExpanded(true); // Раскрытие задачи
-                                db.collection("tasks").document(task.getId()).update("isExpanded", true); // Обновление в Firestore
-                            }
-
-                            calculateProgress(); // Пересчет прогресса
-                            dialog.dismiss(); // Закрытие диалога
-                            Toast.makeText(context, "Подзадача добавлена", Toast.LENGTH_SHORT).show(); // Уведомление
-                        })
+                Map<String, Object> subTaskData = SubTaskCodec.newSubTask(task.getUserId(), task.getId(), description);
+
+                // Добавление подзадачи через журнал записей: ID документа создается на клиенте
+                DocumentReference docRef = db.collection("tasks").document(task.getId()).collection("subtasks").document();
+                outbox.set("add-subtask", docRef, subTaskData)
+                        .addOnSuccessListener(aVoid -> Log.d("Firestore", "Subtask added: " + docRef.getId() + " to task " + task.getId())) // Логирование подтверждения
                         .addOnFailureListener(e -> {
                             Log.e("FirestoreError", "Error adding subtask: " + e.getMessage()); // Логирование ошибки
                             Toast.makeText(context, "Ошибка добавления подзадачи", Toast.LENGTH_SHORT).show(); // Уведомление
                         });
+                SubTask newSubTask = new SubTask(description, false); // Создание новой подзадачи
+                newSubTask.setSubTaskId(docRef.getId()); // Установка ID
+
+                // Обновление кэша новым списком и перепривязка строки задачи
+                List<SubTask> currentSubTasks = new ArrayList<>(cachedSubTasks(task.getId()));
+                currentSubTasks.add(newSubTask);
+                onSubTasksLoaded(task.getId(), currentSubTasks);
+
+                uiState.setExpanded(task.getId(), true); // Раскрытие задачи (локально, без записи в Firestore)
+
+                publishProgress(); // Передача прогресса в UI
+                dialog.dismiss(); // Закрытие диалога
+                Toast.makeText(context, "Подзадача добавлена", Toast.LENGTH_SHORT).show(); // Уведомление
             });
             cancelSubTaskButton.setOnClickListener(v -> dialog.dismiss()); // Обработчик отмены
             dialog.show(); // Отображение диалога
         }
 
-        // Поиск позиции задачи по ID
-        private int findTaskPosition(String taskId) {
-            if (taskId == null || displayItems == null) return -1; // Проверка валидности
-            for (int i = 0; i < displayItems.size(); i++) { // Перебор элементов
-                Object item = displayItems.get(i);
-                if (item instanceof Task && taskId.equals(((Task) item).getId())) { // Проверка совпадения ID
-                    return i; // Возврат позиции
-                }
-            }
-            return -1; // Позиция не найдена
-        }
     }
 }
\ No newline at end of file
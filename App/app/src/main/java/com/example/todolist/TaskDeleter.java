@@ -0,0 +1,189 @@
+package com.example.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Каскадное удаление задач с подзадачами. Ссылки на подзадачи читаются страницами по PAGE_SIZE,
+// каждая страница удаляется пакетами по BATCH_SIZE записей, одновременно коммитится не больше
+// MAX_IN_FLIGHT пакетов: следующая страница запрашивается, только когда свободно место для всех ее пакетов.
+// Документ задачи удаляется последним — после того как контрольный запрос не нашел ни одной подзадачи.
+// Незавершенные удаления запоминаются в SharedPreferences пользователя и продолжаются вызовом resumePending();
+// удаление, отклоненное ошибкой, которая не исправится повтором (правила, данные), из списка убирается.
+// Все обратные вызовы Firestore приходят в главный поток, поэтому состояние не синхронизируется.
+public class TaskDeleter {
+    private static final String TAG = "TaskDeleter";
+    private static final String PREFS_PREFIX = "task_deletions_"; // Отдельный список для каждого пользователя
+    private static final String KEY_PENDING = "pending"; // ID задач, удаление которых не завершено
+    static final int PAGE_SIZE = 300; // Подзадач в одной странице чтения
+    static final int BATCH_SIZE = 100; // Удалений в одном пакете (ограничение Firestore — 500)
+    static final int MAX_IN_FLIGHT = 4; // Одновременно коммитящихся пакетов
+    static final int BATCHES_PER_PAGE = (PAGE_SIZE + BATCH_SIZE - 1) / BATCH_SIZE; // Пакетов из одной страницы
+
+    // Получатель хода удаления
+    public interface Listener {
+        void onProgress(String taskId, int deletedSubTasks);
+        void onDeleted(String taskId);
+        void onFailed(String taskId, Exception error);
+    }
+
+    private final FirebaseFirestore db;
+    private final SharedPreferences prefs;
+    private final Map<String, Deletion> active = new HashMap<>(); // Выполняющиеся удаления по ID задачи
+    private Listener listener;
+
+    public TaskDeleter(Context context, FirebaseFirestore db, String userId) {
+        this.db = db;
+        this.prefs = context.getSharedPreferences(PREFS_PREFIX + userId, Context.MODE_PRIVATE);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Запуск удаления задачи; повторный вызов для той же задачи ничего не делает
+    public void delete(String taskId) {
+        if (taskId == null || taskId.isEmpty() || active.containsKey(taskId)) return;
+        markPending(taskId, true); // Запоминаем до первой записи: прерванное удаление продолжится
+        Deletion deletion = new Deletion(taskId);
+        active.put(taskId, deletion);
+        Log.d(TAG, "Deleting task " + taskId);
+        deletion.fetchNextPage();
+    }
+
+    // Продолжение удалений, прерванных закрытием приложения или ошибкой
+    public void resumePending() {
+        for (String taskId : new HashSet<>(prefs.getStringSet(KEY_PENDING, new HashSet<>()))) {
+            Log.d(TAG, "Resuming deletion of task " + taskId);
+            delete(taskId);
+        }
+    }
+
+    public boolean isDeleting(String taskId) {
+        return active.containsKey(taskId);
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    private void markPending(String taskId, boolean pending) {
+        Set<String> ids = new HashSet<>(prefs.getStringSet(KEY_PENDING, new HashSet<>())); // Набор из prefs нельзя менять
+        if (pending ? ids.add(taskId) : ids.remove(taskId)) {
+            prefs.edit().putStringSet(KEY_PENDING, ids).apply();
+        }
+    }
+
+    // Удаление одной задачи: чтение страниц, пакеты с ограничением параллельности, затем сама задача
+    private final class Deletion {
+        final String taskId;
+        final CollectionReference subTasks;
+        DocumentSnapshot cursor; // Последняя прочитанная подзадача
+        boolean fetching = false; // Запрошена ли страница
+        boolean exhausted = false; // Последняя страница прочитана
+        boolean failed = false;
+        int inFlight = 0; // Коммитящихся пакетов
+        int deletedCount = 0;
+
+        Deletion(String taskId) {
+            this.taskId = taskId;
+            this.subTasks = db.collection("tasks").document(taskId).collection("subtasks");
+        }
+
+        void fetchNextPage() {
+            if (failed || fetching || exhausted || inFlight + BATCHES_PER_PAGE > MAX_IN_FLIGHT) return; // Обратное давление: ждем места для всей страницы
+            fetching = true;
+            Query page = subTasks.orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+            if (cursor != null) page = page.startAfter(cursor);
+            page.get()
+                    .addOnSuccessListener(snapshot -> {
+                        fetching = false;
+                        List<DocumentSnapshot> documents = snapshot.getDocuments();
+                        if (documents.size() < PAGE_SIZE) exhausted = true;
+                        if (!documents.isEmpty()) cursor = documents.get(documents.size() - 1);
+                        for (int from = 0; from < documents.size(); from += BATCH_SIZE) {
+                            commitBatch(documents.subList(from, Math.min(from + BATCH_SIZE, documents.size())));
+                        }
+                        fetchNextPage();
+                        finishIfDone();
+                    })
+                    .addOnFailureListener(this::fail);
+        }
+
+        void commitBatch(List<DocumentSnapshot> documents) {
+            WriteBatch batch = db.batch();
+            for (DocumentSnapshot doc : documents) {
+                batch.delete(doc.getReference());
+            }
+            int size = documents.size();
+            inFlight++;
+            batch.commit()
+                    .addOnSuccessListener(aVoid -> {
+                        inFlight--;
+                        deletedCount += size;
+                        if (listener != null) listener.onProgress(taskId, deletedCount);
+                        fetchNextPage();
+                        finishIfDone();
+                    })
+                    .addOnFailureListener(e -> {
+                        inFlight--;
+                        fail(e);
+                    });
+        }
+
+        // Все страницы прочитаны и удалены: проверяем, что подзадач не осталось (их могли добавить во время удаления)
+        void finishIfDone() {
+            if (failed || fetching || !exhausted || inFlight > 0) return;
+            fetching = true;
+            subTasks.limit(1).get()
+                    .addOnSuccessListener(snapshot -> {
+                        fetching = false;
+                        if (!snapshot.isEmpty()) {
+                            Log.d(TAG, "Subtasks appeared during deletion of " + taskId + ", rescanning");
+                            cursor = null;
+                            exhausted = false;
+                            fetchNextPage();
+                            return;
+                        }
+                        deleteParent();
+                    })
+                    .addOnFailureListener(this::fail);
+        }
+
+        void deleteParent() {
+            db.collection("tasks").document(taskId).delete()
+                    .addOnSuccessListener(aVoid -> {
+                        active.remove(taskId);
+                        markPending(taskId, false);
+                        Log.d(TAG, "Deleted task " + taskId + " with " + deletedCount + " subtasks");
+                        if (listener != null) listener.onDeleted(taskId);
+                    })
+                    .addOnFailureListener(this::fail);
+        }
+
+        // Временная ошибка: задача остается в списке незавершенных и будет удалена при следующем resumePending().
+        // Ошибка, которую повтор не исправит (например, PERMISSION_DENIED), снимает задачу из списка
+        void fail(Exception e) {
+            fetching = false;
+            if (failed) return;
+            failed = true;
+            active.remove(taskId);
+            if (!WriteOutbox.isRetryable(e)) markPending(taskId, false);
+            Log.e(TAG, "Deletion of task " + taskId + " interrupted after " + deletedCount + " subtasks", e);
+            if (listener != null) listener.onFailed(taskId, e);
+        }
+    }
+}
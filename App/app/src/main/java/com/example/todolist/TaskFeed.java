@@ -0,0 +1,203 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Слушатель одного запроса задач, применяющий к TaskIndex только изменения снимка
+// (getDocumentChanges) вместо повторного разбора всех документов.
+// Помнит, какие задачи держит его запрос, чтобы корректно отпускать их при REMOVED и отписке.
+// Если задан TaskStoreSync, изменения снимка переносятся и в локальное хранилище.
+public class TaskFeed implements EventListener<QuerySnapshot>, SnapshotSubscriptionManager.Disposable {
+    private static final String TAG = "TaskFeed";
+    private static final String TASKS_COLLECTION = "tasks";
+
+    // Получатель изменений индекса
+    public interface Callback {
+        void onTasksChanged(TaskFeed feed, List<TaskIndex.Change> changes, boolean fromCache);
+        void onTasksError(FirebaseFirestoreException error);
+    }
+
+    private final TaskIndex index;
+    private final Callback callback;
+    private final Set<String> memberIds = new HashSet<>(); // Задачи, которые держит этот запрос
+    private boolean loaded = false; // Пришел ли хотя бы один снимок
+    private boolean serverSynced = false; // Пришел ли снимок с сервера (результат запроса перенесен в хранилище целиком)
+    private int documentCount = 0; // Количество документов в последнем снимке
+    private DocumentSnapshot firstDocument; // Первый документ последнего снимка (курсор для страниц)
+    private DocumentSnapshot lastDocument; // Последний документ последнего снимка (курсор для страниц)
+    private TaskStoreSync storeSync; // Перенос изменений в локальное хранилище; null — не переносятся
+
+    public TaskFeed(TaskIndex index, Callback callback) {
+        this.index = index;
+        this.callback = callback;
+    }
+
+    public void setStoreSync(TaskStoreSync storeSync) {
+        this.storeSync = storeSync;
+    }
+
+    @Override
+    public void onEvent(QuerySnapshot snapshot, FirebaseFirestoreException error) {
+        if (error != null) {
+            callback.onTasksError(error);
+            return;
+        }
+        if (snapshot == null) return;
+
+        long trace = UiTrace.begin(UiTrace.DECODE_TASKS);
+        List<TaskIndex.Change> changes = new ArrayList<>();
+        List<DocumentChange> documentChanges = snapshot.getDocumentChanges();
+        boolean fullSnapshot = isFullSnapshot(snapshot, documentChanges);
+        List<Task> storeUpserts = new ArrayList<>();
+        List<DocumentReference> storeRemovals = new ArrayList<>(); // Документы, ушедшие из запроса
+        List<String> storeDropped = new ArrayList<>(); // Документы, которые больше нельзя показать
+        if (fullSnapshot && !memberIds.isEmpty()) {
+            // Первый снимок после повторного подключения содержит все документы как ADDED:
+            // отпускаем задачи, которых больше нет в результате запроса, и убираем их из хранилища
+            // (для страниц — только если документа нет и в кэше Firestore)
+            Set<String> currentIds = new HashSet<>();
+            for (QueryDocumentSnapshot doc : snapshot) {
+                currentIds.add(doc.getId());
+            }
+            CollectionReference tasks = snapshot.getQuery().getFirestore().collection(TASKS_COLLECTION);
+            for (String id : new ArrayList<>(memberIds)) {
+                if (!currentIds.contains(id)) {
+                    memberIds.remove(id);
+                    storeRemovals.add(tasks.document(id));
+                    addChange(changes, index.release(id));
+                }
+            }
+            serverSynced = false; // Пока слушатель был снят, задачи могли удалить: следующий снимок с сервера снова сверяет хранилище
+        }
+
+        for (DocumentChange documentChange : documentChanges) {
+            DocumentSnapshot doc = documentChange.getDocument();
+            String id = doc.getId();
+            if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                storeRemovals.add(doc.getReference());
+                if (memberIds.remove(id)) {
+                    addChange(changes, index.release(id));
+                }
+                continue;
+            }
+            Task task = decode(doc);
+            if (task == null || !TaskIndex.isIndexable(task)) {
+                // Документ без даты не отображается: если раньше он был в индексе — отпускаем
+                storeDropped.add(id);
+                if (memberIds.remove(id)) {
+                    addChange(changes, index.release(id));
+                }
+            } else if (memberIds.add(id)) {
+                storeUpserts.add(task);
+                addChange(changes, index.retain(task)); // Новая для этого запроса задача
+            } else {
+                storeUpserts.add(task);
+                addChange(changes, index.update(task)); // Новая версия уже известной задачи
+            }
+        }
+
+        loaded = true;
+        documentCount = snapshot.size();
+        List<DocumentSnapshot> documents = snapshot.getDocuments();
+        firstDocument = documents.isEmpty() ? null : documents.get(0);
+        lastDocument = documents.isEmpty() ? null : documents.get(documents.size() - 1);
+        boolean fromCache = snapshot.getMetadata().isFromCache();
+        if (storeSync != null) {
+            // Снимок из кэша Firestore может быть неполным, а следующий за ним снимок с сервера приходит дельтой:
+            // хранилище сверяется со всем результатом первого снимка с сервера, какими бы ни были его изменения
+            List<Task> serverResult = null;
+            if (!fromCache && !serverSynced) {
+                serverSynced = true;
+                serverResult = decodeAll(documents);
+            }
+            storeSync.onSnapshot(storeUpserts, storeRemovals, storeDropped, serverResult);
+        }
+        UiTrace.end(UiTrace.DECODE_TASKS, trace);
+        Log.d(TAG, "Applied " + documentChanges.size() + " document changes, index changes=" + changes.size()
+                + ", members=" + memberIds.size() + ", fromCache=" + fromCache);
+        callback.onTasksChanged(this, changes, fromCache);
+    }
+
+    // Отписка: отпускаем все задачи этого запроса
+    @Override
+    public void dispose() {
+        List<TaskIndex.Change> changes = new ArrayList<>();
+        for (String id : memberIds) {
+            addChange(changes, index.release(id));
+        }
+        memberIds.clear();
+        loaded = false;
+        serverSynced = false;
+        documentCount = 0;
+        firstDocument = null;
+        lastDocument = null;
+        if (!changes.isEmpty()) {
+            callback.onTasksChanged(this, changes, false);
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int getMemberCount() {
+        return memberIds.size();
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public DocumentSnapshot getFirstDocument() {
+        return firstDocument;
+    }
+
+    public DocumentSnapshot getLastDocument() {
+        return lastDocument;
+    }
+
+    // Снимок, в котором каждый документ пришел как ADDED, — начальный результат запроса
+    private static boolean isFullSnapshot(QuerySnapshot snapshot, List<DocumentChange> documentChanges) {
+        if (documentChanges.size() != snapshot.size()) return false;
+        for (DocumentChange documentChange : documentChanges) {
+            if (documentChange.getType() != DocumentChange.Type.ADDED) return false;
+        }
+        return true;
+    }
+
+    // Отображаемые задачи результата запроса в его порядке
+    private static List<Task> decodeAll(List<DocumentSnapshot> documents) {
+        List<Task> tasks = new ArrayList<>(documents.size());
+        for (DocumentSnapshot doc : documents) {
+            Task task = decode(doc);
+            if (task != null && TaskIndex.isIndexable(task)) tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static Task decode(DocumentSnapshot doc) {
+        try {
+            return TaskSnapshots.decode(doc); // Преобразование документа в объект Task без рефлексии
+        } catch (Exception e) {
+            Log.e("Firestore", "Error converting document " + doc.getId() + " to Task", e); // Логирование ошибки преобразования
+            return null;
+        }
+    }
+
+    private static void addChange(List<TaskIndex.Change> changes, TaskIndex.Change change) {
+        if (change != null) changes.add(change);
+    }
+}
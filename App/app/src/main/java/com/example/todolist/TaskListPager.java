@@ -0,0 +1,157 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Постраничная загрузка общего списка задач в обе стороны от опорной даты (сегодня).
+// Каждая страница — живой запрос с limit и курсором startAfter/endBefore, чьи изменения
+// применяются к TaskIndex через TaskFeed. Перед загрузкой следующей страницы предыдущая
+// "запечатывается": ее limit заменяется фиксированной границей по последнему документу,
+// чтобы вставки внутри страницы не выталкивали задачи в промежуток между страницами.
+public class TaskListPager {
+    private static final String TAG = "TaskListPager";
+    private static final String KEY_PREFIX = "page:"; // Префикс ключей подписок страниц
+    public static final int PAGE_SIZE = 50; // Количество задач в одной странице
+
+    private final SnapshotSubscriptionManager subscriptions;
+    private final Query baseQuery; // Задачи пользователя без сортировки и курсоров
+    private final TaskIndex index;
+    private final TaskFeed.Callback callback;
+    private final List<Page> forwardPages = new ArrayList<>(); // Страницы от опорной даты вперед
+    private final List<Page> backwardPages = new ArrayList<>(); // Страницы до опорной даты, от ближних к дальним
+    private Date anchor; // Опорная дата: начало сегодняшнего дня
+    private TaskStoreSync storeSync; // Перенос задач страниц в локальное хранилище
+
+    public TaskListPager(SnapshotSubscriptionManager subscriptions, Query baseQuery, TaskIndex index, TaskFeed.Callback callback) {
+        this.subscriptions = subscriptions;
+        this.baseQuery = baseQuery;
+        this.index = index;
+        this.callback = callback;
+    }
+
+    // Задачи новых страниц сохраняются в локальное хранилище
+    public void setStoreSync(TaskStoreSync storeSync) {
+        this.storeSync = storeSync;
+    }
+
+    // Начало загрузки: первая страница вперед от опорной даты
+    public void start(Date anchor) {
+        if (isStarted()) return;
+        this.anchor = anchor;
+        Page first = new Page(KEY_PREFIX + "+0", null);
+        forwardPages.add(first);
+        register(first, ordered().startAt(anchor).limit(PAGE_SIZE));
+        Log.d(TAG, "Started at " + anchor + ": " + subscriptions.describe());
+    }
+
+    // Отписка от всех страниц: их задачи отпускаются из индекса
+    public void stop() {
+        if (!isStarted()) return;
+        subscriptions.removeByPrefix(KEY_PREFIX);
+        forwardPages.clear();
+        backwardPages.clear();
+        anchor = null;
+        Log.d(TAG, "Stopped: " + subscriptions.describe());
+    }
+
+    public boolean isStarted() {
+        return anchor != null;
+    }
+
+    public int getPageCount() {
+        return forwardPages.size() + backwardPages.size();
+    }
+
+    public Date getAnchor() {
+        return anchor;
+    }
+
+    // Интервал [fromMillis, toMillis) загруженных страниц: от первого документа самой ранней страницы
+    // до последнего документа самой поздней. Страница, чей снимок еще не пришел, ограничена курсором предыдущей.
+    // null — загрузка не начата
+    public long[] getLoadedRange() {
+        if (!isStarted()) return null;
+        long from = anchor.getTime();
+        if (!backwardPages.isEmpty()) {
+            Page oldest = backwardPages.get(backwardPages.size() - 1);
+            DocumentSnapshot first = oldest.feed.getFirstDocument() != null ? oldest.feed.getFirstDocument() : oldest.cursor;
+            if (first != null && first.getDate("dateTime") != null) from = first.getDate("dateTime").getTime();
+        }
+        long to = anchor.getTime();
+        Page newest = forwardPages.get(forwardPages.size() - 1);
+        DocumentSnapshot last = newest.feed.getLastDocument() != null ? newest.feed.getLastDocument() : newest.cursor;
+        if (last != null && last.getDate("dateTime") != null) to = last.getDate("dateTime").getTime() + 1;
+        return new long[]{from, Math.max(from, to)};
+    }
+
+    // Загрузка следующей (более поздней) страницы, если предыдущая уже загружена и была полной
+    public void loadNext() {
+        if (!isStarted()) return;
+        Page last = forwardPages.get(forwardPages.size() - 1);
+        if (!last.feed.isLoaded() || last.feed.getDocumentCount() < PAGE_SIZE) return; // Ждем снимка или достигнут конец
+        DocumentSnapshot lastDocument = last.feed.getLastDocument();
+        if (lastDocument == null) return;
+
+        // Запечатывание: страница становится диапазоном [ее начало, последний документ]
+        Query sealed = last.cursor == null ? ordered().startAt(anchor) : ordered().startAfter(last.cursor);
+        subscriptions.requery(last.key, sealed.endAt(lastDocument));
+
+        Page next = new Page(KEY_PREFIX + "+" + forwardPages.size(), lastDocument);
+        forwardPages.add(next);
+        register(next, ordered().startAfter(lastDocument).limit(PAGE_SIZE));
+        Log.d(TAG, "Loading forward page " + next.key + ", index size=" + index.size());
+    }
+
+    // Загрузка предыдущей (более ранней) страницы
+    public void loadPrevious() {
+        if (!isStarted()) return;
+        if (backwardPages.isEmpty()) {
+            Page first = new Page(KEY_PREFIX + "-1", null);
+            backwardPages.add(first);
+            register(first, ordered().endBefore(anchor).limitToLast(PAGE_SIZE));
+            Log.d(TAG, "Loading backward page " + first.key);
+            return;
+        }
+        Page oldest = backwardPages.get(backwardPages.size() - 1);
+        if (!oldest.feed.isLoaded() || oldest.feed.getDocumentCount() < PAGE_SIZE) return; // Ждем снимка или достигнуто начало
+        DocumentSnapshot firstDocument = oldest.feed.getFirstDocument();
+        if (firstDocument == null) return;
+
+        // Запечатывание: страница становится диапазоном [первый документ, ее конец)
+        Query sealed = ordered().startAt(firstDocument);
+        subscriptions.requery(oldest.key, oldest.cursor == null ? sealed.endBefore(anchor) : sealed.endBefore(oldest.cursor));
+
+        Page previous = new Page(KEY_PREFIX + "-" + (backwardPages.size() + 1), firstDocument);
+        backwardPages.add(previous);
+        register(previous, ordered().endBefore(firstDocument).limitToLast(PAGE_SIZE));
+        Log.d(TAG, "Loading backward page " + previous.key + ", index size=" + index.size());
+    }
+
+    private Query ordered() {
+        return baseQuery.orderBy("dateTime", Query.Direction.ASCENDING);
+    }
+
+    private void register(Page page, Query query) {
+        subscriptions.replace(page.key, query, page.feed);
+    }
+
+    // Страница списка: ключ подписки, слушатель и курсор, с которого она начинается
+    private final class Page {
+        final String key;
+        final DocumentSnapshot cursor; // Для страниц вперед — startAfter, назад — endBefore; null — опорная дата
+        final TaskFeed feed;
+
+        Page(String key, DocumentSnapshot cursor) {
+            this.key = key;
+            this.cursor = cursor;
+            this.feed = new TaskFeed(index, callback);
+            feed.setStoreSync(storeSync);
+        }
+    }
+}
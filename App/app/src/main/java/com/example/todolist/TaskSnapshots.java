@@ -0,0 +1,29 @@
+package com.example.todolist;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Map;
+
+// Связка TaskCodec (модуль :core, без зависимостей от Firestore) со снимками документов Firestore
+public final class TaskSnapshots {
+    // Firestore возвращает поля дат как Timestamp
+    static final TaskCodec.DateConverter TIMESTAMPS = value -> value instanceof Timestamp ? ((Timestamp) value).toDate() : null;
+
+    private TaskSnapshots() {
+    }
+
+    // Задача из снимка документа; null, если документ не существует
+    @Nullable
+    public static Task decode(DocumentSnapshot doc) {
+        Map<String, Object> data = doc.getData();
+        return data != null ? decode(doc.getId(), data) : null;
+    }
+
+    // Задача из карты данных документа Firestore
+    public static Task decode(String id, Map<String, Object> data) {
+        return TaskCodec.decode(id, data, TIMESTAMPS);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.todolist;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+
+// Локальное хранилище задач и подзадач пользователя — основной путь чтения экранов.
+// Firestore служит источником синхронизации: снимки подписок записываются сюда (TaskStoreSync),
+// а экраны читают выборками из хранилища. Реализации не потокобезопасны для параллельных вызовов:
+// все обращения идут через один фоновый поток, чтобы чтения видели все ранее поставленные записи.
+public interface TaskStore {
+    // --- Чтение ---
+
+    // Задачи пользователя в интервале [fromMillis, toMillis) в порядке возрастания даты
+    List<Task> tasksBetween(String userId, long fromMillis, long toMillis);
+
+    @Nullable
+    Task getTask(String taskId);
+
+    // Подзадачи задачи в порядке, в котором их вернула подписка; null — подзадачи задачи еще не синхронизированы
+    @Nullable
+    List<SubTask> subTasksOf(String taskId);
+
+    // --- Синхронизация ---
+
+    // Вставка или замена задач
+    void upsertTasks(List<Task> tasks);
+
+    // Удаление задач вместе с их подзадачами
+    void deleteTasks(Collection<String> taskIds);
+
+    // Полный результат запроса за интервал [fromMillis, toMillis): задачи интервала, которых в нем нет, удаляются
+    void replaceRange(String userId, long fromMillis, long toMillis, List<Task> tasks);
+
+    // Полный список подзадач задачи
+    void replaceSubTasks(String taskId, List<SubTask> subTasks);
+
+    void close();
+}
@@ -0,0 +1,97 @@
+package com.example.todolist;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Перенос изменений одного запроса задач Firestore в локальное хранилище.
+// Запрос месяца (диапазон без limit) полностью описывает свой интервал: задача, ушедшая из него
+// (REMOVED) или отсутствующая в первом снимке с сервера, удаляется из хранилища. Со страницы списка
+// (limit, курсоры) документ может уйти, продолжая существовать, поэтому для нее удаление переносится,
+// только если документа нет и в локальном кэше Firestore; первый снимок страницы с сервера заменяет
+// задачи строго между ее первым и последним документом (на границах могут лежать задачи соседних страниц).
+// Первый снимок с сервера нужен потому, что удаленная на другом устройстве задача, которой уже нет
+// в кэше Firestore, не придет как REMOVED: ее можно найти, только сравнив хранилище с результатом запроса.
+// Записи выполняются в фоновом потоке хранилища в порядке поступления снимков.
+public class TaskStoreSync {
+    private static final String TAG = "TaskStoreSync";
+
+    private final TaskStore store;
+    private final Executor executor;
+    private final String userId;
+    private final boolean authoritative; // Запрос возвращает все задачи интервала
+    private final long fromMillis;
+    private final long toMillis;
+
+    private TaskStoreSync(TaskStore store, Executor executor, String userId, boolean authoritative, long fromMillis, long toMillis) {
+        this.store = store;
+        this.executor = executor;
+        this.userId = userId;
+        this.authoritative = authoritative;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+    }
+
+    // Запрос всех задач интервала [fromMillis, toMillis)
+    public static TaskStoreSync forRange(TaskStore store, Executor executor, String userId, long fromMillis, long toMillis) {
+        return new TaskStoreSync(store, executor, userId, true, fromMillis, toMillis);
+    }
+
+    // Запрос части задач (страница списка)
+    public static TaskStoreSync forPage(TaskStore store, Executor executor, String userId) {
+        return new TaskStoreSync(store, executor, userId, false, 0, 0);
+    }
+
+    // Изменения снимка: новые и измененные задачи, ушедшие из запроса документы, задачи без даты
+    // и, для первого снимка с сервера, весь результат запроса в порядке возрастания даты
+    void onSnapshot(List<Task> upserts, List<DocumentReference> removed, List<String> dropped, @Nullable List<Task> serverResult) {
+        if (authoritative && serverResult != null) {
+            executor.execute(() -> {
+                store.replaceRange(userId, fromMillis, toMillis, serverResult);
+                Log.d(TAG, "Replaced range with " + serverResult.size() + " tasks");
+            });
+            return;
+        }
+        if (serverResult != null) replacePageInterior(serverResult);
+        List<String> deleted = new ArrayList<>(dropped);
+        for (DocumentReference ref : removed) {
+            if (authoritative) {
+                deleted.add(ref.getId());
+            } else {
+                deleteIfGone(ref);
+            }
+        }
+        if (upserts.isEmpty() && deleted.isEmpty()) return;
+        executor.execute(() -> {
+            store.upsertTasks(upserts);
+            store.deleteTasks(deleted);
+        });
+    }
+
+    // Задачи страницы строго между ее первым и последним документом
+    private void replacePageInterior(List<Task> serverResult) {
+        if (serverResult.size() < 2) return;
+        long from = serverResult.get(0).getDateTime().getTime() + 1;
+        long to = serverResult.get(serverResult.size() - 1).getDateTime().getTime();
+        executor.execute(() -> {
+            store.replaceRange(userId, from, to, serverResult);
+            Log.d(TAG, "Replaced page interior with " + serverResult.size() + " tasks");
+        });
+    }
+
+    // Документ ушел со страницы: удален, если его нет и в кэше Firestore
+    private void deleteIfGone(DocumentReference ref) {
+        ref.get(Source.CACHE).addOnCompleteListener(result -> {
+            if (result.isSuccessful() && result.getResult() != null && result.getResult().exists()) return; // Просто вытеснен со страницы
+            executor.execute(() -> store.deleteTasks(Collections.singletonList(ref.getId())));
+        });
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Состояние отображения задач, принадлежащее устройству, а не документу: раскрытие подзадач.
+// Читается из памяти; изменения копятся и сохраняются в SharedPreferences одной записью apply()
+// через PERSIST_DELAY_MS после последнего изменения (или сразу в flush()), поэтому переключение
+// раскрытия не пишет в Firestore и не вызывает снимков у слушателей задач.
+// Старые документы с полем isExpanded переносятся лениво: при первом получении задачи флаг
+// переходит в локальное состояние, а поле удаляется из документа операцией журнала WriteOutbox.
+// Используется только из главного потока.
+public class TaskUiState {
+    private static final String TAG = "TaskUiState";
+    private static final String PREFS = "task_ui_state";
+    private static final String KEY_EXPANDED = "expanded"; // ID раскрытых задач
+    static final long PERSIST_DELAY_MS = 500; // Задержка, за которую изменения объединяются в одну запись
+    private static final int MAX_BATCH_WRITES = WriteOutbox.MAX_WRITES_PER_OPERATION; // Ограничение Firestore на пакет записи
+
+    private final SharedPreferences prefs;
+    private final Set<String> expandedIds;
+    private final Set<String> migratedIds = new HashSet<>(); // Задачи, у которых поле уже удаляется в этом сеансе
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable persistRunnable = this::flush;
+    private boolean dirty = false; // Есть несохраненные изменения
+    private int persistCount = 0; // Сколько раз состояние записано в prefs
+
+    public TaskUiState(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.expandedIds = new HashSet<>(prefs.getStringSet(KEY_EXPANDED, new HashSet<>())); // Набор из prefs нельзя менять
+    }
+
+    public boolean isExpanded(String taskId) {
+        return taskId != null && expandedIds.contains(taskId);
+    }
+
+    public void setExpanded(String taskId, boolean expanded) {
+        if (taskId == null) return;
+        if (expanded ? expandedIds.add(taskId) : expandedIds.remove(taskId)) {
+            schedulePersist();
+        }
+    }
+
+    // Удаленная задача больше не хранится в состоянии
+    public void forget(String taskId) {
+        setExpanded(taskId, false);
+    }
+
+    // Перенос флага isExpanded из документов задач в локальное состояние с удалением поля
+    public void migrateLegacy(FirebaseFirestore db, WriteOutbox outbox, List<TaskIndex.Change> changes) {
+        WriteOutbox.Operation batch = null;
+        int writes = 0;
+        for (TaskIndex.Change change : changes) {
+            Task task = change.newTask;
+            if (task == null || !task.isExpanded() || task.getId() == null || !migratedIds.add(task.getId())) continue;
+            setExpanded(task.getId(), true);
+            if (batch == null) batch = new WriteOutbox.Operation("migrate-expanded");
+            batch.deleteField(db.collection("tasks").document(task.getId()), TaskCodec.FIELD_IS_EXPANDED);
+            if (++writes == MAX_BATCH_WRITES) {
+                commitMigration(outbox, batch, writes);
+                batch = null;
+                writes = 0;
+            }
+        }
+        if (batch != null) commitMigration(outbox, batch, writes);
+    }
+
+    private void commitMigration(WriteOutbox outbox, WriteOutbox.Operation batch, int writes) {
+        outbox.submit(batch)
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Migrated isExpanded of " + writes + " tasks"))
+                .addOnFailureListener(e -> Log.e(TAG, "Migration of isExpanded failed", e)); // Поле останется и будет перенесено при следующем запуске
+    }
+
+    private void schedulePersist() {
+        dirty = true;
+        handler.removeCallbacks(persistRunnable);
+        handler.postDelayed(persistRunnable, PERSIST_DELAY_MS);
+    }
+
+    // Немедленное сохранение накопленных изменений (onStop)
+    public void flush() {
+        handler.removeCallbacks(persistRunnable);
+        if (!dirty) return;
+        dirty = false;
+        persistCount++;
+        prefs.edit().putStringSet(KEY_EXPANDED, new HashSet<>(expandedIds)).apply(); // Запись на диск в фоне
+    }
+
+    public String describe() {
+        return "[expanded=" + expandedIds.size() + ", persisted=" + persistCount + ", migrated=" + migratedIds.size() + "]";
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.todolist;
+
+import android.os.SystemClock;
+import android.os.Trace;
+
+// Именованные участки горячего пути интерфейса. Каждый участок виден в системной трассировке
+// (Perfetto/systrace) и одновременно копится в общей LatencyStats, откуда сводка перцентилей
+// выводится в лог и в отладочное меню (долгое нажатие на прогресс в MainMenuActivity).
+// Использование: long start = UiTrace.begin(UiTrace.BIND_TASK_ROW); ... UiTrace.end(UiTrace.BIND_TASK_ROW, start);
+// begin и end вызываются в одном потоке (end — в finally, если участок может выйти по исключению);
+// участки могут вкладываться, но не пересекаться
+public final class UiTrace {
+    // Участки списка задач
+    public static final String DECODE_TASKS = "TaskFeed.decode"; // Разбор снимка задач и обновление индекса
+    public static final String DECODE_SUBTASKS = "SubTaskFeed.decode"; // Разбор снимка подзадач
+    public static final String BUILD_ROWS = "TaskAdapter.buildRows"; // Группировка по дням и модели строк (фоновый поток)
+    public static final String DIFF_ROWS = "TaskAdapter.diff"; // Дифф старого и нового списков (фоновый поток)
+    public static final String APPLY_ROWS = "TaskAdapter.applyRows"; // Применение готового списка в главном потоке
+    public static final String APPLY_CHANGES = "TaskAdapter.applyChanges"; // Точечные изменения индекса в главном потоке
+    public static final String CREATE_TASK_ROW = "TaskAdapter.onCreateViewHolder";
+    public static final String BIND_TASK_ROW = "TaskAdapter.onBindViewHolder";
+    public static final String CREATE_SUBTASK_ROW = "SubTaskAdapter.onCreateViewHolder";
+    public static final String BIND_SUBTASK_ROW = "SubTaskAdapter.onBindViewHolder";
+    // Разметки диалогов
+    public static final String INFLATE_ADD_TASK = "Inflate.bottom_sheet_add_task";
+    public static final String INFLATE_EDIT_TASK = "Inflate.dialog_add_task";
+    public static final String INFLATE_ADD_SUBTASK = "Inflate.dialog_add_subtask";
+
+    private static final LatencyStats STATS = new LatencyStats(); // Замеры всех участков процесса
+
+    private UiTrace() {
+    }
+
+    public static long begin(String section) {
+        Trace.beginSection(section);
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    public static void end(String section, long startNanos) {
+        STATS.record(section, SystemClock.elapsedRealtimeNanos() - startNanos);
+        Trace.endSection();
+    }
+
+    // Замеры участков и кадров (FrameMetricsCollector пишет сюда же)
+    public static LatencyStats stats() {
+        return STATS;
+    }
+}
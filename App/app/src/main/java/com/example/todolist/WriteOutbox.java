@@ -0,0 +1,497 @@
+package com.example.todolist;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Журнал записей приложения поверх очереди Firestore. Каждая логическая операция (набор записей,
+// которые должны примениться вместе) сначала сохраняется в SharedPreferences пользователя, затем
+// отправляется в порядке поступления пакетами до MAX_WRITES_PER_BATCH записей. Операция остается
+// в журнале до подтверждения сервером, поэтому видно, сколько изменений еще не отправлено и как давно,
+// а после перезапуска процесса журнал отправляется заново (записи идемпотентны: пути документов
+// фиксированы, ID новых документов создаются на клиенте).
+// Пакет отправляется сразу, не дожидаясь подтверждения предыдущего: commit() применяет записи
+// к локальному кэшу, и без сети интерфейс видит изменения. Если пакет не применился, он вместе со всеми
+// более поздними неподтвержденными операциями отправляется заново в порядке номеров: иначе повтор
+// старого set/update перезаписал бы уже примененную более позднюю запись. Ответы на отправки, чьи
+// операции с тех пор возвращены в очередь, игнорируются. Временные ошибки повторяются с
+// экспоненциальной задержкой, отклоненная правилами операция выбрасывается из журнала с ошибкой
+// в возвращенном Task; если отклонен пакет из нескольких операций, они отправляются по одной.
+// Пока пользователь журнала не вошел в систему, отправка приостановлена. Используется из главного потока.
+public class WriteOutbox {
+    private static final String TAG = "WriteOutbox";
+    private static final String PREFS_PREFIX = "write_outbox_"; // Отдельный журнал для каждого пользователя
+    private static final String KEY_JOURNAL = "journal";
+    private static final String KEY_NEXT_SEQ = "next_seq";
+    static final int MAX_WRITES_PER_BATCH = 100; // Записей в одном пакете отправки
+    static final int MAX_WRITES_PER_OPERATION = 500; // Ограничение Firestore на пакет: операция применяется атомарно
+    static final long INITIAL_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+    private static WriteOutbox instance;
+
+    // Журнал текущего пользователя; при смене пользователя создается журнал нового
+    public static synchronized WriteOutbox get(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        String userId = user != null ? user.getUid() : "";
+        if (instance == null || !instance.userId.equals(userId)) {
+            instance = new WriteOutbox(context.getApplicationContext(), FirebaseFirestore.getInstance(), userId);
+        }
+        return instance;
+    }
+
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<Long, Entry> journal = new LinkedHashMap<>(); // Неподтвержденные операции по номеру, в порядке поступления
+    private final ArrayDeque<Entry> unsent = new ArrayDeque<>(); // Операции, ожидающие отправки
+    private final Runnable sendRunnable = this::sendUnsent;
+    private long nextSeq;
+    private boolean sendScheduled = false;
+    private boolean retryScheduled = false;
+    private long backoffMs = INITIAL_BACKOFF_MS;
+    private int committedCount = 0; // Подтвержденных операций
+    private int droppedCount = 0; // Отклоненных операций
+    private int retryCount = 0; // Повторных отправок после временных ошибок
+    private long lastSyncLagMs = 0; // От записи в журнал до подтверждения, последняя операция
+    private long maxSyncLagMs = 0;
+
+    WriteOutbox(Context context, FirebaseFirestore db, String userId) {
+        this.db = db;
+        this.userId = userId;
+        this.prefs = context.getSharedPreferences(PREFS_PREFIX + userId, Context.MODE_PRIVATE);
+        this.nextSeq = prefs.getLong(KEY_NEXT_SEQ, 1);
+        load();
+        if (!journal.isEmpty()) {
+            Log.d(TAG, "Replaying " + journal.size() + " operations left from previous session");
+            unsent.addAll(journal.values());
+            scheduleSend();
+        }
+    }
+
+    // --- Операции ---
+
+    // Логическая операция: записи применяются атомарно одним пакетом
+    public static final class Operation {
+        final String label; // Название для журнала и логов
+        final List<Write> writes = new ArrayList<>();
+
+        public Operation(String label) {
+            this.label = label;
+        }
+
+        public Operation set(DocumentReference ref, Map<String, Object> data) {
+            writes.add(new Write(Write.SET, ref.getPath(), data));
+            return this;
+        }
+
+        public Operation update(DocumentReference ref, Map<String, Object> fields) {
+            writes.add(new Write(Write.UPDATE, ref.getPath(), fields));
+            return this;
+        }
+
+        public Operation update(DocumentReference ref, String field, @Nullable Object value) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(field, value);
+            return update(ref, fields);
+        }
+
+        // Удаление поля документа (FieldValue.delete())
+        public Operation deleteField(DocumentReference ref, String field) {
+            return update(ref, field, Write.DELETE_FIELD);
+        }
+
+        public Operation delete(DocumentReference ref) {
+            writes.add(new Write(Write.DELETE, ref.getPath(), null));
+            return this;
+        }
+
+        public int size() {
+            return writes.size();
+        }
+
+        public boolean isEmpty() {
+            return writes.isEmpty();
+        }
+    }
+
+    public com.google.android.gms.tasks.Task<Void> set(String label, DocumentReference ref, Map<String, Object> data) {
+        return submit(new Operation(label).set(ref, data));
+    }
+
+    public com.google.android.gms.tasks.Task<Void> update(String label, DocumentReference ref, Map<String, Object> fields) {
+        return submit(new Operation(label).update(ref, fields));
+    }
+
+    public com.google.android.gms.tasks.Task<Void> delete(String label, DocumentReference ref) {
+        return submit(new Operation(label).delete(ref));
+    }
+
+    // Запись операции в журнал и постановка в очередь отправки. Task завершается после подтверждения
+    // сервером или с ошибкой, если операция отклонена (после перезапуска процесса ответа уже не будет)
+    public com.google.android.gms.tasks.Task<Void> submit(Operation operation) {
+        if (operation.size() > MAX_WRITES_PER_OPERATION) {
+            throw new IllegalArgumentException("Operation '" + operation.label + "' has " + operation.size()
+                    + " writes, limit is " + MAX_WRITES_PER_OPERATION);
+        }
+        Entry entry = new Entry(nextSeq++, operation.label, System.currentTimeMillis(), operation.writes);
+        entry.result = new TaskCompletionSource<>();
+        if (operation.isEmpty()) {
+            entry.result.setResult(null);
+            return entry.result.getTask();
+        }
+        journal.put(entry.seq, entry);
+        persist();
+        unsent.add(entry);
+        scheduleSend(); // Операции одного цикла главного потока уходят общим пакетом
+        return entry.result.getTask();
+    }
+
+    // Возобновление отправки после входа в систему (onStart)
+    public void resume() {
+        if (!unsent.isEmpty() && !retryScheduled) scheduleSend();
+    }
+
+    // --- Отправка ---
+
+    private void scheduleSend() {
+        if (sendScheduled) return;
+        sendScheduled = true;
+        handler.post(sendRunnable);
+    }
+
+    private void sendUnsent() {
+        sendScheduled = false;
+        if (!isOwnerSignedIn()) {
+            Log.d(TAG, "Owner of the journal is signed out, " + unsent.size() + " operations wait");
+            return;
+        }
+        while (!unsent.isEmpty()) {
+            List<Entry> batchEntries = new ArrayList<>();
+            int writes = 0;
+            while (!unsent.isEmpty()) {
+                Entry next = unsent.peek();
+                if (!batchEntries.isEmpty() && writes + next.writes.size() > MAX_WRITES_PER_BATCH) break;
+                if (!batchEntries.isEmpty() && next.isolated) break; // Подозреваемая операция отправляется отдельно
+                unsent.poll();
+                batchEntries.add(next);
+                writes += next.writes.size();
+                if (next.isolated) break;
+            }
+            commit(batchEntries, writes);
+        }
+    }
+
+    private void commit(List<Entry> entries, int writes) {
+        WriteBatch batch = db.batch();
+        for (Entry entry : entries) {
+            entry.sentIn = entries; // Отправка, ответ на которую ожидается
+            for (Write write : entry.writes) {
+                write.applyTo(batch, db);
+            }
+        }
+        batch.commit()
+                .addOnSuccessListener(aVoid -> onCommitted(entries))
+                .addOnFailureListener(e -> onCommitFailed(entries, writes, e));
+    }
+
+    private void onCommitted(List<Entry> entries) {
+        if (isStale(entries)) return; // Операции уже отправлены заново после более ранней ошибки
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries) {
+            entry.sentIn = null;
+            journal.remove(entry.seq);
+            committedCount++;
+            lastSyncLagMs = now - entry.createdAt;
+            maxSyncLagMs = Math.max(maxSyncLagMs, lastSyncLagMs);
+            if (entry.result != null) entry.result.trySetResult(null);
+        }
+        backoffMs = INITIAL_BACKOFF_MS;
+        persist();
+    }
+
+    private void onCommitFailed(List<Entry> entries, int writes, Exception e) {
+        if (isStale(entries)) return;
+        if (isRetryable(e) || !isOwnerSignedIn()) {
+            Log.w(TAG, "Batch of " + writes + " writes failed, retrying in " + backoffMs + " ms", e);
+            requeue(entries);
+            scheduleRetry();
+            return;
+        }
+        if (entries.size() > 1) { // Отклонен пакет: неизвестно, какая операция виновата — отправляем по одной
+            for (Entry entry : entries) entry.isolated = true;
+            requeue(entries);
+            scheduleSend();
+            return;
+        }
+        Entry entry = entries.get(0);
+        Log.e(TAG, "Operation '" + entry.label + "' rejected and dropped", e);
+        entry.sentIn = null;
+        journal.remove(entry.seq);
+        droppedCount++;
+        persist();
+        if (entry.result != null) entry.result.trySetException(e);
+    }
+
+    // Возврат неприменившегося пакета в очередь вместе со всеми более поздними операциями журнала
+    // (отправленными и еще нет) в порядке номеров. Более ранние отправки продолжают ждать ответа
+    private void requeue(List<Entry> entries) {
+        long firstSeq = entries.get(0).seq;
+        unsent.clear(); // Неотправленные операции всегда позже отправленных — они войдут в очередь заново
+        for (Entry entry : journal.values()) {
+            if (entry.seq < firstSeq) continue;
+            entry.sentIn = null; // Ответ на прежнюю отправку больше не учитывается
+            unsent.add(entry);
+        }
+    }
+
+    // Ответ на отправку, операции которой с тех пор возвращены в очередь или отправлены заново
+    private static boolean isStale(List<Entry> entries) {
+        return entries.get(0).sentIn != entries;
+    }
+
+    private void scheduleRetry() {
+        if (retryScheduled) return;
+        retryScheduled = true;
+        long delay = backoffMs;
+        backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        handler.postDelayed(() -> {
+            retryScheduled = false;
+            retryCount++;
+            sendUnsent();
+        }, delay);
+    }
+
+    private boolean isOwnerSignedIn() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        return user != null && user.getUid().equals(userId);
+    }
+
+    // Временные ошибки: сеть, перегрузка, конфликт транзакции. Остальные (правила, данные) не исправятся повтором
+    static boolean isRetryable(Exception e) {
+        if (!(e instanceof FirebaseFirestoreException)) return true;
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case RESOURCE_EXHAUSTED:
+            case ABORTED:
+            case INTERNAL:
+            case UNKNOWN:
+            case CANCELLED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Владелец журнала; "" — пользователь не вошел
+    public String getUserId() {
+        return userId;
+    }
+
+    // --- Метрики ---
+
+    // Неподтвержденные операции
+    public int getDepth() {
+        return journal.size();
+    }
+
+    public int getPendingWriteCount() {
+        int count = 0;
+        for (Entry entry : journal.values()) count += entry.writes.size();
+        return count;
+    }
+
+    // Возраст самой старой неподтвержденной операции, 0 — журнал пуст
+    public long getOldestAgeMs() {
+        Iterator<Entry> it = journal.values().iterator();
+        return it.hasNext() ? System.currentTimeMillis() - it.next().createdAt : 0;
+    }
+
+    public String describe() {
+        return "[depth=" + getDepth() + ", writes=" + getPendingWriteCount() + ", oldestAgeMs=" + getOldestAgeMs()
+                + ", committed=" + committedCount + ", dropped=" + droppedCount + ", retries=" + retryCount
+                + ", lastLagMs=" + lastSyncLagMs + ", maxLagMs=" + maxSyncLagMs + "]";
+    }
+
+    // --- Журнал ---
+
+    private void persist() {
+        JSONArray array = new JSONArray();
+        for (Entry entry : journal.values()) {
+            array.put(entry.json);
+        }
+        prefs.edit()
+                .putString(KEY_JOURNAL, array.toString())
+                .putLong(KEY_NEXT_SEQ, nextSeq)
+                .apply(); // Запись на диск в фоне; незавершенные apply() дописываются при остановке активности
+    }
+
+    private void load() {
+        String stored = prefs.getString(KEY_JOURNAL, null);
+        if (stored == null) return;
+        long started = SystemClock.elapsedRealtime();
+        try {
+            JSONArray array = new JSONArray(stored);
+            for (int i = 0; i < array.length(); i++) {
+                Entry entry = Entry.fromJson(array.getJSONObject(i));
+                journal.put(entry.seq, entry);
+                nextSeq = Math.max(nextSeq, entry.seq + 1);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Corrupted outbox journal, " + journal.size() + " operations recovered", e);
+        }
+        Log.d(TAG, "Loaded " + journal.size() + " operations in " + (SystemClock.elapsedRealtime() - started) + " ms");
+    }
+
+    // Операция журнала
+    private static final class Entry {
+        final long seq;
+        final String label;
+        final long createdAt;
+        final List<Write> writes;
+        final JSONObject json; // Сериализованная форма для перезаписи журнала без повторного кодирования
+        TaskCompletionSource<Void> result; // null для операций, восстановленных из журнала
+        boolean isolated = false; // Отправлять отдельным пакетом
+        List<Entry> sentIn; // Пакет последней отправки; null — не отправлена или возвращена в очередь
+
+        Entry(long seq, String label, long createdAt, List<Write> writes) {
+            this.seq = seq;
+            this.label = label;
+            this.createdAt = createdAt;
+            this.writes = writes;
+            this.json = toJson();
+        }
+
+        private JSONObject toJson() {
+            try {
+                JSONArray array = new JSONArray();
+                for (Write write : writes) array.put(write.toJson());
+                return new JSONObject()
+                        .put("seq", seq)
+                        .put("label", label)
+                        .put("createdAt", createdAt)
+                        .put("writes", array);
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("Operation '" + label + "' cannot be journaled", e);
+            }
+        }
+
+        static Entry fromJson(JSONObject json) throws JSONException {
+            JSONArray array = json.getJSONArray("writes");
+            List<Write> writes = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                writes.add(Write.fromJson(array.getJSONObject(i)));
+            }
+            return new Entry(json.getLong("seq"), json.optString("label"), json.getLong("createdAt"), writes);
+        }
+    }
+
+    // Одна запись операции. Значения полей: null, String, Boolean, Number, Date или удаление поля
+    private static final class Write {
+        static final String SET = "set";
+        static final String UPDATE = "update";
+        static final String DELETE = "delete";
+        static final Object DELETE_FIELD = new Object(); // Маркер FieldValue.delete()
+        private static final String TYPE = "$type";
+
+        final String type;
+        final String path;
+        final Map<String, Object> data; // null для удаления документа
+
+        Write(String type, String path, @Nullable Map<String, Object> data) {
+            this.type = type;
+            this.path = path;
+            this.data = data != null ? new HashMap<>(data) : null;
+        }
+
+        void applyTo(WriteBatch batch, FirebaseFirestore db) {
+            DocumentReference ref = db.document(path);
+            if (DELETE.equals(type)) {
+                batch.delete(ref);
+                return;
+            }
+            Map<String, Object> fields = new HashMap<>(data.size());
+            for (Map.Entry<String, Object> field : data.entrySet()) {
+                fields.put(field.getKey(), field.getValue() == DELETE_FIELD ? FieldValue.delete() : field.getValue());
+            }
+            if (SET.equals(type)) {
+                batch.set(ref, fields);
+            } else {
+                batch.update(ref, fields);
+            }
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject().put("type", type).put("path", path);
+            if (data != null) {
+                JSONObject fields = new JSONObject();
+                for (Map.Entry<String, Object> field : data.entrySet()) {
+                    fields.put(field.getKey(), encodeValue(field.getValue()));
+                }
+                json.put("data", fields);
+            }
+            return json;
+        }
+
+        static Write fromJson(JSONObject json) throws JSONException {
+            Map<String, Object> data = null;
+            JSONObject fields = json.optJSONObject("data");
+            if (fields != null) {
+                data = new HashMap<>();
+                Iterator<String> keys = fields.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    data.put(key, decodeValue(fields.get(key)));
+                }
+            }
+            return new Write(json.getString("type"), json.getString("path"), data);
+        }
+
+        private static Object encodeValue(@Nullable Object value) throws JSONException {
+            if (value == null) return JSONObject.NULL;
+            if (value == DELETE_FIELD) return new JSONObject().put(TYPE, "deleteField");
+            if (value instanceof Date) return new JSONObject().put(TYPE, "date").put("ms", ((Date) value).getTime());
+            if (value instanceof String || value instanceof Boolean || value instanceof Number) return value;
+            throw new JSONException("Unsupported value type " + value.getClass().getSimpleName());
+        }
+
+        private static Object decodeValue(Object value) {
+            if (value == JSONObject.NULL) return null;
+            if (value instanceof JSONObject) {
+                JSONObject typed = (JSONObject) value;
+                if ("date".equals(typed.optString(TYPE))) return new Date(typed.optLong("ms"));
+                if ("deleteField".equals(typed.optString(TYPE))) return DELETE_FIELD;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.example.todolist;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Бюджеты TaskAdapter на синтетических наборах (TaskDataset) в Robolectric:
+ * число созданных и привязанных строк, память первой раскладки и время загрузки списка.
+ * Привязки должны зависеть от размера экрана, а не от числа задач; раскрытие задачи
+ * в плоском режиме — одна вставка диапазона строк подзадач, а не перестройка списка.
+ * Путь загрузки MainMenuActivity (окно месяцев, страницы списка, выборки из SqliteTaskStore)
+ * проходит через те же индекс, хранилище и выбор между точечным применением и перестройкой
+ * (MainMenuActivity.needsFullRefresh): саму активность без вошедшего пользователя Firebase не запустить.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class TaskAdapterScalingTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int MAX_BOUND_ROWS = 64; // Строк на экране с запасом
+    private static final long MAX_LOAD_MILLIS = 10_000; // Построение, дифф и первая раскладка 100k задач
+    private static final long MAX_STORE_MILLIS = 10_000; // Синхронизация месяцев и выборки хранилища для 20k задач
+    private static final long MAX_EXTRA_LAYOUT_BYTES = 4L * 1024 * 1024; // Рост памяти первой раскладки 1k -> 100k
+    private static final long AWAIT_MILLIS = 30_000;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        if (FirebaseApp.getApps(context).isEmpty()) {
+            FirebaseApp.initializeApp(context, new FirebaseOptions.Builder()
+                    .setApplicationId("1:000000000000:android:0000000000000000")
+                    .setProjectId("todolist-test")
+                    .setApiKey("test-api-key")
+                    .build()); // Сеть не используется: адаптер только создает клиентов
+        }
+    }
+
+    @Test
+    public void initialLoad_bindsOnlyVisibleRows() {
+        Loaded small = load(1_000);
+        Loaded large = load(100_000);
+        for (Loaded loaded : new Loaded[]{small, large}) {
+            assertTrue(PerfBudget.describe("binds, " + loaded.taskCount + " tasks", loaded.adapter.binds, MAX_BOUND_ROWS), loaded.adapter.binds <= MAX_BOUND_ROWS);
+            assertTrue(PerfBudget.describe("creates, " + loaded.taskCount + " tasks", loaded.adapter.creates, MAX_BOUND_ROWS), loaded.adapter.creates <= MAX_BOUND_ROWS);
+        }
+        assertTrue(PerfBudget.describe("load 100k, ms", large.elapsedMillis, MAX_LOAD_MILLIS), large.elapsedMillis <= MAX_LOAD_MILLIS);
+        if (small.layoutBytes >= 0) {
+            long growth = large.layoutBytes - small.layoutBytes;
+            assertTrue(PerfBudget.describe("layout bytes 100k - 1k", growth, MAX_EXTRA_LAYOUT_BYTES), growth <= MAX_EXTRA_LAYOUT_BYTES);
+        }
+    }
+
+    @Test
+    public void singleTaskChange_rebindsOneRow() {
+        Loaded loaded = load(10_000);
+        Task original = loaded.dataset.tasks.get(0); // Первая задача на экране (после заголовка)
+        Task updated = copyOf(original);
+        updated.setCompleted(!original.isCompleted());
+        loaded.adapter.resetCounts();
+
+        loaded.adapter.applyTaskChanges(Collections.singletonList(new TaskIndex.Change(original, updated)));
+        await(() -> loaded.adapter.binds > 0, loaded.list);
+
+        assertEquals(1, loaded.adapter.binds);
+        assertEquals(0, loaded.adapter.creates);
+    }
+
+    @Test
+    public void resubmittingSameTasks_rebindsNothing() {
+        Loaded loaded = load(10_000);
+        int updates = loaded.progressUpdates[0];
+        loaded.adapter.resetCounts();
+
+        loaded.adapter.setAllTasks(new ArrayList<>(loaded.dataset.tasks)); // Новый снимок без изменений
+        await(() -> loaded.progressUpdates[0] > updates, loaded.list);
+
+        assertEquals(0, loaded.adapter.binds);
+        assertEquals(loaded.dataset.tasks.size() + loaded.dataset.dayCount(), loaded.adapter.getItemCount());
+    }
+
+    @Test
+    public void flatExpandAndCollapse_insertAndRemoveSubTaskRange() {
+        Loaded loaded = load(1_000);
+        Task task = loaded.dataset.tasks.get(0); // Строка 1, сразу после заголовка даты
+        List<SubTask> subTasks = loaded.dataset.subTasks.get(task.getId());
+        loaded.adapter.getSubTasksCache().put(task.getId(), subTasks);
+        int updates = loaded.progressUpdates[0];
+        loaded.adapter.setFlatSubTasks(true);
+        await(() -> loaded.progressUpdates[0] > updates, loaded.list);
+
+        List<int[]> inserted = new ArrayList<>();
+        List<int[]> removed = new ArrayList<>();
+        loaded.adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                inserted.add(new int[]{positionStart, itemCount});
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                removed.add(new int[]{positionStart, itemCount});
+            }
+        });
+        int rows = loaded.adapter.getItemCount();
+
+        clickExpand(loaded.list, 1);
+        assertEquals(1, inserted.size());
+        assertArrayEquals(new int[]{2, subTasks.size()}, inserted.get(0)); // Одна вставка диапазона под задачей
+        assertEquals(rows + subTasks.size(), loaded.adapter.getItemCount());
+
+        clickExpand(loaded.list, 1);
+        assertEquals(1, removed.size());
+        assertArrayEquals(new int[]{2, subTasks.size()}, removed.get(0)); // Одно удаление того же диапазона
+        assertEquals(rows, loaded.adapter.getItemCount());
+    }
+
+    @Test
+    public void monthWindow_syncsStoreAndRefreshesSelectedDay() {
+        TaskDataset dataset = TaskDataset.builder().tasks(20_000).skew(TaskDataset.DateSkew.HOT_DAYS).build();
+        long[] day = busiestDay(dataset); // Выбранная в календаре дата — самый загруженный день
+        int[] progressUpdates = {0};
+        CountingAdapter adapter = new CountingAdapter(() -> progressUpdates[0]++, context);
+        RecyclerView list = newList(adapter);
+        SqliteTaskStore store = new SqliteTaskStore(context);
+        TaskIndex index = new TaskIndex();
+        try {
+            long start = System.nanoTime();
+            int refreshes = 0;
+            int next = 0;
+            Calendar month = monthOf(dataset.tasks.get(0));
+            while (next < dataset.tasks.size()) {
+                Calendar monthEnd = (Calendar) month.clone();
+                monthEnd.add(Calendar.MONTH, 1);
+                List<Task> monthTasks = new ArrayList<>();
+                List<TaskIndex.Change> changes = new ArrayList<>();
+                while (next < dataset.tasks.size() && timeOf(dataset.tasks.get(next)) < monthEnd.getTimeInMillis()) {
+                    Task task = dataset.tasks.get(next++);
+                    monthTasks.add(task);
+                    TaskIndex.Change change = index.retain(task);
+                    if (change != null) changes.add(change);
+                }
+                // Первый снимок месяца: TaskStoreSync.forRange и применение изменений индекса, как в applyIndexChanges
+                store.replaceRange(dataset.userId, month.getTimeInMillis(), monthEnd.getTimeInMillis(), monthTasks);
+                if (MainMenuActivity.needsFullRefresh(changes.size(), false)) {
+                    adapter.setCalendarTasks(store.tasksBetween(dataset.userId, day[0], day[1]));
+                    refreshes++;
+                } else {
+                    List<TaskIndex.Change> dayChanges = new ArrayList<>();
+                    for (TaskIndex.Change change : changes) {
+                        if (timeOf(change.newTask) >= day[0] && timeOf(change.newTask) < day[1]) dayChanges.add(change);
+                    }
+                    adapter.applyTaskChanges(dayChanges);
+                }
+                month = monthEnd;
+            }
+            int expectedRows = store.tasksBetween(dataset.userId, day[0], day[1]).size();
+            await(() -> adapter.getItemCount() == expectedRows && progressUpdates[0] > 0, list);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertTrue("Month snapshots of 20k tasks should exceed the refresh threshold", refreshes > 0);
+            assertTrue(PerfBudget.describe("month window sync + refresh, ms", elapsedMillis, MAX_STORE_MILLIS), elapsedMillis <= MAX_STORE_MILLIS);
+            assertTrue(PerfBudget.describe("binds, " + expectedRows + " tasks of the day", adapter.binds, MAX_BOUND_ROWS), adapter.binds <= MAX_BOUND_ROWS);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void listPages_applyIncrementallyThenRefreshFromStore() {
+        TaskDataset dataset = TaskDataset.builder().tasks(10_000).skew(TaskDataset.DateSkew.HOT_DAYS).build();
+        int[] progressUpdates = {0};
+        CountingAdapter adapter = new CountingAdapter(() -> progressUpdates[0]++, context);
+        RecyclerView list = newList(adapter);
+        SqliteTaskStore store = new SqliteTaskStore(context);
+        TaskIndex index = new TaskIndex();
+        try {
+            int first = dataset.tasks.size() / 2; // Опорная задача (сегодня) в середине набора
+            int pages = 3;
+            adapter.setAllTasks(new ArrayList<>()); // Режим списка открыт до первой страницы
+            await(() -> progressUpdates[0] > 0, list);
+            for (int page = 0; page < pages; page++) {
+                List<Task> pageTasks = dataset.tasks.subList(first + page * TaskListPager.PAGE_SIZE, first + (page + 1) * TaskListPager.PAGE_SIZE);
+                List<TaskIndex.Change> changes = new ArrayList<>();
+                for (Task task : pageTasks) changes.add(index.retain(task));
+                store.upsertTasks(pageTasks); // TaskStoreSync.forPage: страницы только дополняют хранилище
+                assertFalse("A page must be applied incrementally", MainMenuActivity.needsFullRefresh(changes.size(), false));
+                int updates = progressUpdates[0];
+                adapter.applyTaskChanges(changes);
+                await(() -> progressUpdates[0] > updates, list);
+            }
+            int loaded = pages * TaskListPager.PAGE_SIZE;
+            assertTrue(PerfBudget.describe("binds, " + loaded + " paged tasks", adapter.binds, MAX_BOUND_ROWS), adapter.binds <= MAX_BOUND_ROWS);
+
+            // Перестройка после крупного пакета (loadAllTasks): выборка интервала загруженных страниц
+            long from = timeOf(dataset.tasks.get(first));
+            long to = timeOf(dataset.tasks.get(first + loaded - 1)) + 1;
+            List<Task> fromStore = store.tasksBetween(dataset.userId, from, to);
+            assertEquals(loaded, fromStore.size());
+            int rows = adapter.getItemCount();
+            int updates = progressUpdates[0];
+            adapter.resetCounts();
+            adapter.setAllTasks(fromStore);
+            await(() -> progressUpdates[0] > updates, list);
+
+            assertEquals(0, adapter.binds); // Те же задачи из хранилища — строки не перепривязываются
+            assertEquals(rows, adapter.getItemCount());
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void clickExpand(RecyclerView list, int position) {
+        layout(list);
+        RecyclerView.ViewHolder holder = list.findViewHolderForAdapterPosition(position);
+        assertNotNull("Row " + position + " is not laid out", holder);
+        holder.itemView.findViewById(R.id.expandButton).performClick();
+    }
+
+    // Загрузка набора в режиме списка и первая раскладка экрана
+    private Loaded load(int taskCount) {
+        TaskDataset dataset = TaskDataset.builder().tasks(taskCount).subTasksPerTask(3).skew(TaskDataset.DateSkew.HOT_DAYS).build();
+        int[] progressUpdates = {0};
+        CountingAdapter adapter = new CountingAdapter(() -> progressUpdates[0]++, context);
+        RecyclerView list = newList(adapter);
+
+        long start = System.nanoTime();
+        adapter.setAllTasks(dataset.tasks);
+        int expectedRows = taskCount + dataset.dayCount();
+        await(() -> adapter.getItemCount() == expectedRows && progressUpdates[0] > 0, null); // Список применен, прогресс опубликован
+        long layoutBytes = PerfBudget.allocatedBytesOnce(() -> layout(list));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new Loaded(taskCount, dataset, adapter, list, progressUpdates, elapsedMillis, layoutBytes);
+    }
+
+    private RecyclerView newList(TaskAdapter adapter) {
+        RecyclerView list = new RecyclerView(context);
+        list.setLayoutManager(new LinearLayoutManager(context));
+        list.setItemAnimator(null); // Без анимаций изменение строки — одна привязка того же ViewHolder'а
+        list.setAdapter(adapter);
+        return list;
+    }
+
+    // Границы дня [начало дня, начало следующего дня) с наибольшим числом задач
+    private static long[] busiestDay(TaskDataset dataset) {
+        DayGrouper grouper = new DayGrouper();
+        Task best = null;
+        Task dayFirst = null;
+        int bestCount = 0;
+        int count = 0;
+        for (Task task : dataset.tasks) {
+            if (dayFirst != null && grouper.dayOf(task) == grouper.dayOf(dayFirst)) {
+                count++;
+            } else {
+                dayFirst = task;
+                count = 1;
+            }
+            if (count > bestCount) {
+                bestCount = count;
+                best = dayFirst;
+            }
+        }
+        Calendar start = Calendar.getInstance();
+        start.setTime(best.getDateTime());
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.DAY_OF_MONTH, 1);
+        return new long[]{start.getTimeInMillis(), end.getTimeInMillis()};
+    }
+
+    // Полночь первого дня месяца задачи, как у подписок окна месяцев
+    private static Calendar monthOf(Task task) {
+        Calendar month = Calendar.getInstance();
+        month.setTime(task.getDateTime());
+        month.set(Calendar.DAY_OF_MONTH, 1);
+        month.set(Calendar.HOUR_OF_DAY, 0);
+        month.set(Calendar.MINUTE, 0);
+        month.set(Calendar.SECOND, 0);
+        month.set(Calendar.MILLISECOND, 0);
+        return month;
+    }
+
+    private static long timeOf(Task task) {
+        return task.getDateTime().getTime();
+    }
+
+    // Ожидание результата фонового потока строк: его доставка в главный поток и кадры Choreographer
+    private static void await(BooleanSupplier condition, RecyclerView list) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for the adapter");
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(16));
+            if (list != null) layout(list);
+            Thread.yield();
+        }
+        if (list != null) layout(list);
+    }
+
+    private static void layout(RecyclerView list) {
+        list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        list.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static Task copyOf(Task task) {
+        Task copy = new Task(task.getUserId(), task.getDescription(), task.getDateTime());
+        copy.setId(task.getId());
+        copy.setCompleted(task.isCompleted());
+        copy.setReminderTime(task.getReminderTime());
+        return copy;
+    }
+
+    // Адаптер со счетчиками созданных и привязанных строк
+    private static final class CountingAdapter extends TaskAdapter {
+        int creates;
+        int binds;
+
+        CountingAdapter(Runnable progressUpdateCallback, Context context) {
+            super(null, progressUpdateCallback, context);
+        }
+
+        void resetCounts() {
+            creates = 0;
+            binds = 0;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            creates++;
+            return super.onCreateViewHolder(parent, viewType);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            binds++;
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    private static final class Loaded {
+        final int taskCount;
+        final TaskDataset dataset;
+        final CountingAdapter adapter;
+        final RecyclerView list;
+        final int[] progressUpdates; // Вызовы обновления прогресса (по одному на примененный список)
+        final long elapsedMillis;
+        final long layoutBytes; // -1 — JVM не умеет считать выделения
+
+        Loaded(int taskCount, TaskDataset dataset, CountingAdapter adapter, RecyclerView list, int[] progressUpdates, long elapsedMillis, long layoutBytes) {
+            this.taskCount = taskCount;
+            this.dataset = dataset;
+            this.adapter = adapter;
+            this.list = list;
+            this.progressUpdates = progressUpdates;
+            this.elapsedMillis = elapsedMillis;
+            this.layoutBytes = layoutBytes;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.todolist;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.PropertyName;
+import com.google.firebase.firestore.util.CustomClassMapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Совпадение результатов TaskCodec/SubTaskCodec с рефлексивным маппером Firestore,
+ * который используется внутри DocumentSnapshot.toObject.
+ * Task и SubTask лежат в модуле :core без аннотаций Firestore, поэтому маппер
+ * заполняет аннотированные копии схемы документов (TaskDocument, SubTaskDocument).
+ * Скорость обоих путей сравнивает TaskDecodeBenchmarkTest.
+ */
+public class TaskCodecEquivalenceTest {
+    @Test
+    public void taskCodec_matchesReflectiveMapper() {
+        for (Map<String, Object> data : taskDocuments(200)) {
+            Task expected = CustomClassMapper.convertToCustomClass(data, TaskDocument.class, null).toTask("id");
+            assertEquals(expected, TaskSnapshots.decode("id", data));
+        }
+    }
+
+    @Test
+    public void subTaskCodec_matchesReflectiveMapper() {
+        for (Map<String, Object> data : subTaskDocuments(200)) {
+            SubTask expected = CustomClassMapper.convertToCustomClass(data, SubTaskDocument.class, null).toSubTask("id");
+            assertEquals(expected, SubTaskCodec.decode("id", data));
+        }
+    }
+
+    @Test
+    public void newTask_writesSameFieldsAsDialogs() {
+        Date dateTime = new Date(1_700_000_000_000L);
+        Map<String, Object> withoutReminder = TaskCodec.newTask("user", "Купить хлеб", dateTime);
+        assertEquals(4, withoutReminder.size());
+        assertFalse(withoutReminder.containsKey("reminderTime"));
+
+        Map<String, Object> withReminder = TaskCodec.newTask("user", "Купить хлеб", dateTime, null);
+        assertEquals(5, withReminder.size());
+        assertTrue(withReminder.containsKey("reminderTime"));
+        assertEquals(Boolean.FALSE, withReminder.get("isCompleted"));
+        assertFalse(withReminder.containsKey("isExpanded")); // Раскрытие хранится на устройстве (TaskUiState)
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsWrongFieldType() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("dateTime", "2024-01-01");
+        TaskCodec.decode("id", data);
+    }
+
+    static List<Map<String, Object>> taskDocuments(int count) {
+        List<Map<String, Object>> documents = new ArrayList<>();
+        long base = 1_700_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("userId", "user");
+            data.put("description", "Задача " + i);
+            data.put("dateTime", new Timestamp(new Date(base + i * 60_000L)));
+            data.put("isCompleted", i % 3 == 0);
+            data.put("isExpanded", i % 5 == 0);
+            data.put("reminderTime", i % 2 == 0 ? new Timestamp(new Date(base + i * 60_000L - 900_000L)) : null);
+            documents.add(data);
+        }
+        return documents;
+    }
+
+    private static List<Map<String, Object>> subTaskDocuments(int count) {
+        List<Map<String, Object>> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("description", "Подзадача " + i);
+            data.put("isCompleted", i % 2 == 0);
+            documents.add(data);
+        }
+        return documents;
+    }
+
+    // Схема документа задачи для рефлексивного маппера (как была в аннотациях Task до выноса в :core)
+    public static class TaskDocument {
+        private String userId;
+        private String description;
+        private Date dateTime;
+        private boolean completed;
+        private boolean expanded;
+        private Date reminderTime;
+
+        public String getUserId() { return userId; }
+        public void setUserId(String userId) { this.userId = userId; }
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+        public Date getDateTime() { return dateTime; }
+        public void setDateTime(Date dateTime) { this.dateTime = dateTime; }
+        @PropertyName("isCompleted") public boolean isCompleted() { return completed; }
+        @PropertyName("isCompleted") public void setCompleted(boolean completed) { this.completed = completed; }
+        @PropertyName("isExpanded") public boolean isExpanded() { return expanded; }
+        @PropertyName("isExpanded") public void setExpanded(boolean expanded) { this.expanded = expanded; }
+        @PropertyName("reminderTime") public Date getReminderTime() { return reminderTime; }
+        @PropertyName("reminderTime") public void setReminderTime(Date reminderTime) { this.reminderTime = reminderTime; }
+
+        Task toTask(String id) {
+            Task task = new Task(userId, description, dateTime);
+            task.setId(id);
+            task.setCompleted(completed);
+            task.setExpanded(expanded);
+            task.setReminderTime(reminderTime);
+            return task;
+        }
+    }
+
+    // Схема документа подзадачи для рефлексивного маппера
+    public static class SubTaskDocument {
+        private String description;
+        private boolean completed;
+
+        public String getDescription() { return description; }
+        public void setDescription(String description) { this.description = description; }
+        @PropertyName("isCompleted") public boolean isCompleted() { return completed; }
+        @PropertyName("isCompleted") public void setCompleted(boolean completed) { this.completed = completed; }
+
+        SubTask toSubTask(String id) {
+            SubTask subTask = new SubTask(description, completed);
+            subTask.setSubTaskId(id);
+            return subTask;
+        }
+    }
+}
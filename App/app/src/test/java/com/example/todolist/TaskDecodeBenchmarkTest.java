@@ -0,0 +1,46 @@
+package com.example.todolist;
+
+import com.google.firebase.firestore.util.CustomClassMapper;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Разбор документов задач двумя путями на одних данных: рефлексивный маппер Firestore
+ * (DocumentSnapshot.toObject) и TaskCodec через TaskSnapshots. Маппер есть только в SDK Firestore,
+ * поэтому сравнение живет в тестах приложения, а не в JMH-модуле :benchmarks (там — масштабирование TaskCodec).
+ * Бюджет с запасом: ручной разбор не должен быть медленнее рефлексии и должен выделять меньше памяти.
+ */
+public class TaskDecodeBenchmarkTest {
+    private static final int DOCUMENTS = 5_000;
+    private static final int RUNS = 10;
+
+    @Test
+    public void codec_isFasterAndLighterThanReflectiveMapper() {
+        List<Map<String, Object>> documents = TaskCodecEquivalenceTest.taskDocuments(DOCUMENTS);
+        Runnable reflective = () -> {
+            for (Map<String, Object> data : documents) {
+                CustomClassMapper.convertToCustomClass(data, TaskCodecEquivalenceTest.TaskDocument.class, null).toTask("id");
+            }
+        };
+        Runnable codec = () -> {
+            for (Map<String, Object> data : documents) {
+                TaskSnapshots.decode("id", data);
+            }
+        };
+
+        long reflectiveNanos = PerfBudget.bestNanos(RUNS, reflective);
+        long codecNanos = PerfBudget.bestNanos(RUNS, codec);
+        assertTrue(PerfBudget.describe("codec vs reflective, us", codecNanos / 1_000, reflectiveNanos / 1_000), codecNanos < reflectiveNanos);
+
+        long reflectiveBytes = PerfBudget.allocatedBytes(reflective);
+        long codecBytes = PerfBudget.allocatedBytes(codec);
+        assumeTrue("Allocation counting unsupported", reflectiveBytes >= 0 && codecBytes >= 0);
+        assertTrue(PerfBudget.describe("codec vs reflective, bytes", codecBytes, reflectiveBytes), codecBytes < reflectiveBytes);
+    }
+}
@@ -0,0 +1,32 @@
+// JMH-бенчмарки модуля :core. Запуск: ./gradlew :benchmarks:jmh [-PjmhInclude=<регулярное выражение>]
+// Результаты в JSON — build/results/jmh/results.json
+plugins {
+    java
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8" // Комментарии в исходниках на русском
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(testFixtures(project(":core"))) // Наборы данных TaskDataset
+    implementation(libs.jmh.core)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks of the task pipeline"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("results/jmh/results.json").get().asFile
+    doFirst { results.parentFile.mkdirs() }
+    args("-rf", "json", "-rff", results.absolutePath)
+    project.findProperty("jmhInclude")?.let { args(it.toString()) }
+}
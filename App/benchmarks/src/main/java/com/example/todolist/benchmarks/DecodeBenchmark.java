@@ -0,0 +1,52 @@
+package com.example.todolist.benchmarks;
+
+import com.example.todolist.TaskCodec;
+import com.example.todolist.TaskDataset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Разбор снимка: карты данных документов в Task через TaskCodec.
+// Перевод Timestamp в Date (TaskSnapshots) остается в приложении и здесь не измеряется.
+// Сравнение с рефлексивным маппером Firestore (его нет вне SDK) — TaskDecodeBenchmarkTest в тестах приложения
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int taskCount;
+
+    private String[] ids; // ID документов
+    private List<Map<String, Object>> documents;
+
+    @Setup
+    public void setUp() {
+        documents = TaskDataset.builder().tasks(taskCount).build().taskDocuments();
+        ids = new String[taskCount];
+        for (int i = 0; i < taskCount; i++) ids[i] = "task-" + i;
+    }
+
+    @Benchmark
+    public void decodeSnapshot(Blackhole blackhole) {
+        for (int i = 0, size = documents.size(); i < size; i++) {
+            blackhole.consume(TaskCodec.decode(ids[i], documents.get(i)));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.todolist.benchmarks;
+
+import com.example.todolist.RowModel;
+import com.example.todolist.RowModelFactory;
+import com.example.todolist.SubTask;
+import com.example.todolist.Task;
+import com.example.todolist.TaskDataset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Построение списка строк адаптера (RowModelFactory.buildList): группировка по дням,
+// форматирование дат и строки подзадач плоского режима
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisplayListBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int taskCount;
+
+    @Param({"UNIFORM", "HOT_DAYS"})
+    public TaskDataset.DateSkew skew; // Число заголовков и длина групп зависят от распределения дат
+
+    private List<Task> tasks;
+    private Map<String, List<SubTask>> expandedSubTasks;
+    private RowModelFactory rowFactory;
+
+    @Setup
+    public void setUp() {
+        TaskDataset dataset = TaskDataset.builder().tasks(taskCount).subTasksPerTask(5).skew(skew).build();
+        tasks = dataset.tasks;
+        expandedSubTasks = dataset.expandedEvery(10); // Раскрыта каждая десятая задача, по 5 подзадач
+        rowFactory = new RowModelFactory();
+    }
+
+    // Календарь: задачи дня без заголовков
+    @Benchmark
+    public List<RowModel> plainList() {
+        return rowFactory.buildList(tasks, false, null);
+    }
+
+    // Режим списка: заголовок перед первой задачей каждого дня
+    @Benchmark
+    public List<RowModel> groupedByDay() {
+        return rowFactory.buildList(tasks, true, null);
+    }
+
+    // Режим списка с подзадачами раскрытых задач в общем списке
+    @Benchmark
+    public List<RowModel> groupedWithFlatSubTasks() {
+        return rowFactory.buildList(tasks, true, expandedSubTasks);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.todolist.benchmarks;
+
+import com.example.todolist.SubTask;
+import com.example.todolist.Task;
+import com.example.todolist.TaskDataset;
+import com.example.todolist.TaskProgress;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Расчет прогресса: полный пересчет при новом списке и точечное переключение одной задачи
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgressBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int taskCount;
+
+    private List<Task> tasks;
+    private TaskProgress progress;
+    private TaskProgress weighted;
+    private String toggledId;
+    private boolean toggled;
+
+    @Setup
+    public void setUp() {
+        TaskDataset dataset = TaskDataset.builder().tasks(taskCount).subTasksPerTask(4).build();
+        tasks = dataset.tasks;
+        progress = new TaskProgress();
+        weighted = new TaskProgress();
+        weighted.setWeightedBySubTasks(true);
+        for (Map.Entry<String, List<SubTask>> entry : dataset.subTasks.entrySet()) {
+            weighted.setSubTasks(entry.getKey(), entry.getValue());
+        }
+        for (Task task : tasks) weighted.add(task);
+        toggledId = tasks.get(tasks.size() / 2).getId();
+    }
+
+    // Новый список: счетчики заново за один проход (TaskAdapter после перестройки строк)
+    @Benchmark
+    public int recount() {
+        progress.clear();
+        for (int i = 0, size = tasks.size(); i < size; i++) {
+            progress.add(tasks.get(i));
+        }
+        return progress.getPercentage();
+    }
+
+    // Отметка одной задачи в режиме с весами подзадач: время не должно зависеть от числа задач
+    @Benchmark
+    public int toggleOne() {
+        toggled = !toggled;
+        weighted.setCompleted(toggledId, toggled);
+        return weighted.getPercentage();
+    }
+}
@@ -0,0 +1,19 @@
+// Модель задач и построение списка без зависимостей от Android: собирается и проверяется на обычной JVM
+plugins {
+    `java-library`
+    `java-test-fixtures` // TaskDataset и PerfBudget для тестов :app и бенчмарков
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8" // Комментарии в исходниках на русском
+}
+
+dependencies {
+    compileOnly(libs.androidx.annotation)
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,55 @@
+package com.example.todolist;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Дни задач для группировки режима списка. День задачи — целый номер суток от эпохи
+// в локальном часовом поясе, поэтому группы строятся за один проход по уже отсортированным
+// задачам без Calendar, Date-ключей и сортировки (см. RowModelFactory.buildList).
+// Заголовок форматируется один раз на день и кэшируется. Не потокобезопасен: используется из одного потока.
+public class DayGrouper {
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000; // Длительность суток в миллисекундах
+    private static final int MAX_CACHED_HEADERS = 1024; // Сколько заголовков хранить до сброса кэша
+
+    private final SimpleDateFormat headerFormat = new SimpleDateFormat("EEEE, dd MMMM", Locale.getDefault()); // Форматтер заголовков дат
+    private final Map<Long, String> headers = new HashMap<>(); // Заголовок по номеру дня
+    private TimeZone zone = TimeZone.getDefault();
+
+    // Номер дня задачи в локальном часовом поясе
+    public long dayOf(Task task) {
+        return task.getDateTime() != null ? epochDay(task.getDateTime().getTime()) : Long.MIN_VALUE;
+    }
+
+    // Заголовок дня задачи (из кэша, если день уже встречался)
+    public String headerOf(Task task) {
+        return header(dayOf(task), task);
+    }
+
+    public long epochDay(long millis) {
+        return Math.floorDiv(millis + zone.getOffset(millis), DAY_MILLIS);
+    }
+
+    private String header(long day, Task task) {
+        String header = headers.get(day);
+        if (header == null) {
+            if (headers.size() >= MAX_CACHED_HEADERS) headers.clear();
+            header = headerFormat.format(task.getDateTime()); // Любое время этого дня дает тот же заголовок
+            headers.put(day, header);
+        }
+        return header;
+    }
+
+    // Смена часового пояса устройства меняет границы дней — заголовки пересчитываются.
+    // Вызывается перед каждой перестройкой списка
+    public void refreshZone() {
+        TimeZone current = TimeZone.getDefault();
+        if (!current.getID().equals(zone.getID())) {
+            zone = current;
+            headerFormat.setTimeZone(current);
+            headers.clear();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.todolist;
+
+// Заголовок дня в режиме списка
+public final class HeaderRow implements RowModel {
+    public final long day; // Номер дня в локальном часовом поясе
+    public final String text; // Отформатированная дата
+    private final long stableId;
+
+    public HeaderRow(long day, String text) {
+        this.day = day;
+        this.text = text;
+        this.stableId = StableIds.of("header", Long.toString(day));
+    }
+
+    @Override
+    public long getStableId() {
+        return stableId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HeaderRow)) return false;
+        HeaderRow other = (HeaderRow) o;
+        return day == other.day && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(day);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.todolist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Длительности именованных участков (разбор снимка, построение строк, привязка и т.д.) и их перцентили.
+// Для каждого участка хранятся последние CAPACITY замеров в кольцевом буфере: запись — O(1) без выделений,
+// перцентили считаются только при запросе сводки. Потокобезопасен: участки пишутся из главного и фоновых потоков
+public final class LatencyStats {
+    public static final int CAPACITY = 1024; // Замеров на участок для перцентилей
+
+    private final Map<String, Section> sections = new LinkedHashMap<>(); // Участки в порядке первого замера
+
+    public synchronized void record(String section, long nanos) {
+        Section stats = sections.get(section);
+        if (stats == null) {
+            stats = new Section();
+            sections.put(section, stats);
+        }
+        stats.add(nanos);
+    }
+
+    // Сводка участка; null — замеров еще не было
+    public synchronized Summary summary(String section) {
+        Section stats = sections.get(section);
+        return stats != null ? stats.summarize(section) : null;
+    }
+
+    public synchronized List<Summary> summaries() {
+        List<Summary> result = new ArrayList<>(sections.size());
+        for (Map.Entry<String, Section> entry : sections.entrySet()) {
+            result.add(entry.getValue().summarize(entry.getKey()));
+        }
+        return result;
+    }
+
+    public synchronized void reset() {
+        sections.clear();
+    }
+
+    // Таблица сводок по участкам для лога и отладочного меню
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Summary summary : summaries()) {
+            if (text.length() > 0) text.append('\n');
+            text.append(summary);
+        }
+        return text.length() > 0 ? text.toString() : "no samples";
+    }
+
+    // Перцентили участка по последним замерам, в наносекундах
+    public static final class Summary {
+        public final String section;
+        public final long count; // Всего замеров (перцентили — по последним CAPACITY)
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max; // Максимум за все время
+        public final long totalNanos; // Суммарное время за все время
+
+        Summary(String section, long count, long p50, long p90, long p99, long max, long totalNanos) {
+            this.section = section;
+            this.count = count;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+            this.totalNanos = totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: n=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms total=%.0fms",
+                    section, count, millis(p50), millis(p90), millis(p99), millis(max), millis(totalNanos));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    private static final class Section {
+        private final long[] samples = new long[CAPACITY]; // Кольцевой буфер последних замеров
+        private long count = 0;
+        private long max = 0;
+        private long total = 0;
+
+        void add(long nanos) {
+            samples[(int) (count % CAPACITY)] = nanos;
+            count++;
+            total += nanos;
+            if (nanos > max) max = nanos;
+        }
+
+        Summary summarize(String name) {
+            int size = (int) Math.min(count, CAPACITY);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return new Summary(name, count, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), max, total);
+        }
+
+        // Перцентиль по ближайшему рангу
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.todolist;
+
+// Неизменяемая модель строки списка: все отображаемые строки и флаги вычислены заранее,
+// в фоновом потоке, и привязка ViewHolder'а только присваивает готовые значения
+public interface RowModel {
+    long getStableId(); // Стабильный ID строки для RecyclerView
+}
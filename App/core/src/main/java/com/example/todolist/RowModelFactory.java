@@ -0,0 +1,61 @@
+package com.example.todolist;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+// Построение моделей строк из задач. Все форматирование дат выполняется здесь, в фоновом потоке
+// адаптера, а не при привязке строк. Не потокобезопасен: используется только из одного фонового потока.
+public final class RowModelFactory {
+    private final SimpleDateFormat taskDateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault()); // Дата и время в строке задачи
+    private final DayGrouper dayGrouper = new DayGrouper(); // Номера дней и заголовки дат
+
+    // Строки для отсортированных по dateTime задач; с заголовками — заголовок перед первой задачей каждого дня.
+    // Если переданы подзадачи раскрытых задач (плоский режим), их строки идут сразу за строкой задачи
+    public List<RowModel> buildList(List<Task> tasks, boolean withHeaders, Map<String, List<SubTask>> expandedSubTasks) {
+        refreshZone();
+        List<RowModel> rows = new ArrayList<>(withHeaders ? tasks.size() + tasks.size() / 4 + 1 : tasks.size());
+        long currentDay = Long.MIN_VALUE;
+        for (int i = 0, size = tasks.size(); i < size; i++) {
+            Task task = tasks.get(i);
+            if (withHeaders) {
+                if (task.getDateTime() == null) continue; // Пропуск задач без даты
+                long day = dayGrouper.dayOf(task);
+                if (day != currentDay) {
+                    currentDay = day;
+                    rows.add(headerRow(task));
+                }
+            }
+            rows.add(taskRow(task));
+            List<SubTask> subTasks = expandedSubTasks != null ? expandedSubTasks.get(task.getId()) : null;
+            if (subTasks != null) {
+                addSubTaskRows(rows, task.getId(), subTasks);
+            }
+        }
+        return rows;
+    }
+
+    public TaskRow taskRow(Task task) {
+        String dateTimeStr = task.getDateTime() != null ? taskDateFormat.format(task.getDateTime()) : "Нет даты";
+        return new TaskRow(task, task.getDescription() + " (" + dateTimeStr + ")", task.isCompleted(), dayGrouper.dayOf(task));
+    }
+
+    public static void addSubTaskRows(List<RowModel> rows, String taskId, List<SubTask> subTasks) {
+        for (SubTask subTask : subTasks) {
+            rows.add(new SubTaskRow(taskId, subTask));
+        }
+    }
+
+    public HeaderRow headerRow(Task task) {
+        return new HeaderRow(dayGrouper.dayOf(task), dayGrouper.headerOf(task));
+    }
+
+    // Часовой пояс устройства мог смениться с прошлой перестройки
+    public void refreshZone() {
+        dayGrouper.refreshZone();
+        taskDateFormat.setTimeZone(TimeZone.getDefault());
+    }
+}
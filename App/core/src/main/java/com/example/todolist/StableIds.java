@@ -0,0 +1,28 @@
+package com.example.todolist;
+
+// Стабильные long-идентификаторы строк RecyclerView, вычисляемые из строковых ID документов Firestore.
+// 64-битный хэш FNV-1a: одинаковый ID всегда дает одинаковое значение, коллизии практически исключены.
+public final class StableIds {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StableIds() {
+    }
+
+    // ID строки для ключа key в пространстве имен namespace (например, "task" и ID документа)
+    public static long of(String namespace, String key) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, namespace);
+        hash = (hash ^ ':') * FNV_PRIME; // Разделитель, чтобы ("ab", "c") и ("a", "bc") не совпадали
+        hash = mix(hash, key);
+        return hash == -1L ? 0L : hash; // -1 зарезервирован RecyclerView.NO_ID
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) return hash * FNV_PRIME;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
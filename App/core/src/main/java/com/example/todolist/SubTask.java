@@ -1,7 +1,8 @@
 package com.example.todolist;
 
-import com.google.firebase.firestore.PropertyName;
+import java.util.Objects;
 
+// Подзадача. Преобразование документов — SubTaskCodec
 public class SubTask {
     private String subTaskId;
     private String description;
@@ -31,13 +32,27 @@ public class SubTask {
         this.description = description;
     }
 
-    @PropertyName("isCompleted")
     public boolean isCompleted() {
         return isCompleted;
     }
 
-    @PropertyName("isCompleted")
     public void setCompleted(boolean completed) {
         this.isCompleted = completed;
     }
+
+    // Равенство по содержимому: используется при вычислении диффа списков подзадач
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SubTask)) return false;
+        SubTask other = (SubTask) o;
+        return isCompleted == other.isCompleted
+                && Objects.equals(subTaskId, other.subTaskId)
+                && Objects.equals(description, other.description);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(subTaskId, description, isCompleted);
+    }
 }
\ No newline at end of file
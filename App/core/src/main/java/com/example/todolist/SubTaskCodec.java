@@ -0,0 +1,33 @@
+package com.example.todolist;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Ручное преобразование документов подзадач Firestore в SubTask и обратно (вместо doc.toObject(SubTask.class))
+public final class SubTaskCodec {
+    // Имена полей документа подзадачи
+    public static final String FIELD_DESCRIPTION = "description";
+    public static final String FIELD_IS_COMPLETED = "isCompleted";
+    public static final String FIELD_USER_ID = "userId"; // Владелец, для запросов к группе коллекций
+    public static final String FIELD_TASK_ID = "taskId"; // ID родительской задачи, для запросов к группе коллекций
+
+    private SubTaskCodec() {
+    }
+
+    // Подзадача из карты данных документа. Поле неверного типа — IllegalArgumentException, как у toObject
+    public static SubTask decode(String id, Map<String, Object> data) {
+        SubTask subTask = new SubTask(TaskCodec.readString(data, FIELD_DESCRIPTION), TaskCodec.readBoolean(data, FIELD_IS_COMPLETED));
+        subTask.setSubTaskId(id);
+        return subTask;
+    }
+
+    // Поля новой подзадачи (TaskAdapter, диалог добавления подзадачи)
+    public static Map<String, Object> newSubTask(String userId, String taskId, String description) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD_DESCRIPTION, description); // Описание подзадачи
+        data.put(FIELD_IS_COMPLETED, false); // Статус выполнения
+        data.put(FIELD_USER_ID, userId); // Владелец
+        data.put(FIELD_TASK_ID, taskId); // Родительская задача
+        return data;
+    }
+}
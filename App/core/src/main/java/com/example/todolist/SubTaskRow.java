@@ -0,0 +1,47 @@
+package com.example.todolist;
+
+// Строка подзадачи: текст и зачеркивание подготовлены при получении списка подзадач.
+// В плоском режиме строка стоит в общем списке сразу после строки своей задачи
+public final class SubTaskRow implements RowModel {
+    public final String taskId; // Родительская задача (для строк плоского списка)
+    public final SubTask subTask;
+    public final String text; // Описание подзадачи
+    public final boolean completed; // Статус на момент построения строки (зачеркивание текста)
+    private final long stableId;
+
+    public SubTaskRow(SubTask subTask) {
+        this(null, subTask);
+    }
+
+    public SubTaskRow(String taskId, SubTask subTask) {
+        this.taskId = taskId;
+        this.subTask = subTask;
+        this.text = subTask.getDescription() != null ? subTask.getDescription() : "";
+        this.completed = subTask.isCompleted();
+        this.stableId = subTask.getSubTaskId() != null
+                ? StableIds.of("subtask", subTask.getSubTaskId())
+                : StableIds.of("subtask-local", String.valueOf(System.identityHashCode(subTask))); // Подзадача без ID документа
+    }
+
+    public String getSubTaskId() {
+        return subTask.getSubTaskId();
+    }
+
+    @Override
+    public long getStableId() {
+        return stableId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SubTaskRow)) return false;
+        SubTaskRow other = (SubTaskRow) o;
+        return completed == other.completed && text.equals(other.text) && subTask.equals(other.subTask);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * text.hashCode() + (completed ? 1 : 0);
+    }
+}
@@ -1,17 +1,17 @@
 package com.example.todolist;
 
-import com.google.firebase.firestore.Exclude;
-import com.google.firebase.firestore.PropertyName;
-
 import java.util.Date;
+import java.util.Objects;
 
+// Задача пользователя. Документы Firestore преобразуются в Task и обратно через TaskCodec, поэтому
+// класс не зависит от аннотаций маппера Firestore
 public class Task {
     private String id;
     private String userId;
     private String description;
     private Date dateTime;
     private boolean isCompleted;
-    private boolean isExpanded = false;
+    private boolean isExpanded = false; // Флаг из старых документов; раскрытие хранится в TaskUiState
     private Date reminderTime; // Добавлено поле для времени напоминания
 
     public Task() {
@@ -25,7 +25,6 @@ public class Task {
         this.isExpanded = false;
     }
 
-    @Exclude
     public String getId() {
         return id;
     }
@@ -58,33 +57,47 @@ public class Task {
         this.dateTime = dateTime;
     }
 
-    @PropertyName("isCompleted")
     public boolean isCompleted() {
         return isCompleted;
     }
 
-    @PropertyName("isCompleted")
     public void setCompleted(boolean completed) {
         this.isCompleted = completed;
     }
 
-    @PropertyName("isExpanded")
     public boolean isExpanded() {
         return isExpanded;
     }
 
-    @PropertyName("isExpanded")
     public void setExpanded(boolean expanded) {
         this.isExpanded = expanded;
     }
 
-    @PropertyName("reminderTime") // Аннотация для Firestore
     public Date getReminderTime() {
         return reminderTime;
     }
 
-    @PropertyName("reminderTime")
     public void setReminderTime(Date reminderTime) {
         this.reminderTime = reminderTime;
     }
+
+    // Равенство по содержимому: используется при вычислении диффа списков задач
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Task)) return false;
+        Task other = (Task) o;
+        return isCompleted == other.isCompleted
+                && isExpanded == other.isExpanded
+                && Objects.equals(id, other.id)
+                && Objects.equals(userId, other.userId)
+                && Objects.equals(description, other.description)
+                && Objects.equals(dateTime, other.dateTime)
+                && Objects.equals(reminderTime, other.reminderTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, userId, description, dateTime, isCompleted, isExpanded, reminderTime);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.example.todolist;
+
+import androidx.annotation.Nullable;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+// Ручное преобразование документов задач Firestore в Task и обратно.
+// Заменяет doc.toObject(Task.class): рефлексивный маппер Firestore на каждом документе
+// ищет сеттеры и разбирает аннотации @PropertyName/@Exclude, а здесь поля читаются напрямую из карты данных.
+// Классы Firestore здесь не используются: даты в формате хранилища (Timestamp) переводит DateConverter,
+// который передает приложение (TaskSnapshots), поэтому кодек работает и вне Android (бенчмарки).
+public final class TaskCodec {
+    // Имена полей документа задачи
+    public static final String FIELD_USER_ID = "userId";
+    public static final String FIELD_DESCRIPTION = "description";
+    public static final String FIELD_DATE_TIME = "dateTime";
+    public static final String FIELD_IS_COMPLETED = "isCompleted";
+    public static final String FIELD_IS_EXPANDED = "isExpanded"; // Устаревшее: раскрытие хранится в TaskUiState, поле только читается для переноса
+    public static final String FIELD_REMINDER_TIME = "reminderTime";
+
+    // Перевод значения поля даты, не являющегося Date, в Date; null — тип не поддерживается
+    public interface DateConverter {
+        @Nullable
+        Date toDate(Object value);
+    }
+
+    private TaskCodec() {
+    }
+
+    // Задача из карты данных документа, даты в которой — Date. Поле неверного типа — IllegalArgumentException, как у toObject
+    public static Task decode(String id, Map<String, Object> data) {
+        return decode(id, data, null);
+    }
+
+    // Задача из карты данных документа; даты других типов переводит dates
+    public static Task decode(String id, Map<String, Object> data, @Nullable DateConverter dates) {
+        Task task = new Task();
+        task.setId(id);
+        task.setUserId(readString(data, FIELD_USER_ID));
+        task.setDescription(readString(data, FIELD_DESCRIPTION));
+        task.setDateTime(readDate(data, FIELD_DATE_TIME, dates));
+        task.setCompleted(readBoolean(data, FIELD_IS_COMPLETED));
+        task.setExpanded(readBoolean(data, FIELD_IS_EXPANDED));
+        task.setReminderTime(readDate(data, FIELD_REMINDER_TIME, dates));
+        return task;
+    }
+
+    // Поля новой задачи без напоминания (SettingsActivity)
+    public static Map<String, Object> newTask(String userId, String description, Date dateTime) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD_USER_ID, userId); // ID пользователя
+        data.put(FIELD_DESCRIPTION, description); // Описание задачи
+        data.put(FIELD_DATE_TIME, dateTime); // Время выполнения
+        data.put(FIELD_IS_COMPLETED, false); // Статус выполнения
+        return data;
+    }
+
+    // Поля новой задачи с временем напоминания (null — без напоминания) (MainMenuActivity)
+    public static Map<String, Object> newTask(String userId, String description, Date dateTime, @Nullable Date reminderTime) {
+        Map<String, Object> data = newTask(userId, description, dateTime);
+        data.put(FIELD_REMINDER_TIME, reminderTime); // Время напоминания
+        return data;
+    }
+
+    // Полная карта полей задачи (без ID — он хранится в пути документа)
+    public static Map<String, Object> encode(Task task) {
+        Map<String, Object> data = newTask(task.getUserId(), task.getDescription(), task.getDateTime(), task.getReminderTime());
+        data.put(FIELD_IS_COMPLETED, task.isCompleted());
+        return data;
+    }
+
+    // --- Чтение полей с проверкой типа ---
+    static String readString(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        if (value == null || value instanceof String) return (String) value;
+        throw wrongType(field, "String", value);
+    }
+
+    static boolean readBoolean(Map<String, Object> data, String field) {
+        Object value = data.get(field);
+        if (value == null) return false; // Отсутствующее поле — значение по умолчанию
+        if (value instanceof Boolean) return (Boolean) value;
+        throw wrongType(field, "Boolean", value);
+    }
+
+    static Date readDate(Map<String, Object> data, String field, @Nullable DateConverter dates) {
+        Object value = data.get(field);
+        if (value == null) return null;
+        if (value instanceof Date) return (Date) value;
+        Date converted = dates != null ? dates.toDate(value) : null; // Timestamp из снимков Firestore
+        if (converted != null) return converted;
+        throw wrongType(field, "Timestamp", value);
+    }
+
+    private static IllegalArgumentException wrongType(String field, String expected, Object value) {
+        return new IllegalArgumentException("Field '" + field + "' expected " + expected + " but was " + value.getClass().getSimpleName());
+    }
+}
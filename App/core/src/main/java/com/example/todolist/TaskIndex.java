@@ -0,0 +1,135 @@
+package com.example.todolist;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Клиентский индекс задач, которые держат подписки экрана, отсортированный по dateTime.
+// Из него получаются точечные изменения (Change) для обновления отображаемого списка;
+// полные выборки экрана идут из локального хранилища (TaskStore).
+// Задачу могут одновременно держать несколько подписок (окна месяцев, страницы),
+// поэтому для каждой задачи ведется счетчик ссылок: задача удаляется из индекса,
+// только когда ее отпустила последняя подписка.
+public class TaskIndex {
+    private final TreeMap<Key, Task> byTime = new TreeMap<>(); // Задачи, упорядоченные по (dateTime, id)
+    private final Map<String, Task> byId = new HashMap<>(); // Быстрый доступ к задаче по ID
+    private final Map<String, Integer> refCounts = new HashMap<>(); // Сколько подписок держат задачу
+
+    // Изменение одной задачи: oldTask == null — добавление, newTask == null — удаление
+    public static final class Change {
+        public final Task oldTask;
+        public final Task newTask;
+
+        public Change(Task oldTask, Task newTask) {
+            this.oldTask = oldTask;
+            this.newTask = newTask;
+        }
+    }
+
+    // Подписка начала держать задачу (ADDED). Возвращает изменение индекса или null, если задача в индексе не изменилась
+    public Change retain(Task task) {
+        if (!isIndexable(task)) return null;
+        Integer count = refCounts.get(task.getId());
+        refCounts.put(task.getId(), count == null ? 1 : count + 1);
+        return upsert(task);
+    }
+
+    // Новая версия уже удерживаемой задачи (MODIFIED). Возвращает изменение индекса или null, если версия та же
+    public Change update(Task task) {
+        if (!isIndexable(task) || !refCounts.containsKey(task.getId())) return null;
+        return upsert(task);
+    }
+
+    // Подписка отпустила задачу (REMOVED или отписка). Возвращает изменение, если задача удалена из индекса
+    public Change release(String taskId) {
+        Integer count = taskId != null ? refCounts.get(taskId) : null;
+        if (count == null) return null;
+        if (count > 1) {
+            refCounts.put(taskId, count - 1);
+            return null; // Задачу еще держит другая подписка
+        }
+        refCounts.remove(taskId);
+        Task previous = byId.remove(taskId);
+        if (previous == null) return null;
+        byTime.remove(keyOf(previous));
+        return new Change(previous, null);
+    }
+
+    public Task get(String taskId) {
+        return taskId != null ? byId.get(taskId) : null;
+    }
+
+    // Задачи в интервале [fromMillis, toMillis) в порядке возрастания даты
+    public List<Task> tasksBetween(long fromMillis, long toMillis) {
+        if (toMillis <= fromMillis) return new ArrayList<>();
+        return new ArrayList<>(byTime.subMap(new Key(fromMillis, ""), true, new Key(toMillis, ""), false).values());
+    }
+
+    // Все задачи в порядке возрастания даты
+    public List<Task> allTasks() {
+        return new ArrayList<>(byTime.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public void clear() {
+        byTime.clear();
+        byId.clear();
+        refCounts.clear();
+    }
+
+    // Вставка или замена задачи в обоих представлениях индекса — O(log n).
+    // Та же версия задачи (повторный снимок после переподписки страницы) изменением не считается
+    private Change upsert(Task task) {
+        Task previous = byId.get(task.getId());
+        if (task.equals(previous)) return null;
+        byId.put(task.getId(), task);
+        if (previous != null) {
+            byTime.remove(keyOf(previous)); // Дата могла измениться — удаляем старый ключ
+        }
+        byTime.put(keyOf(task), task);
+        return new Change(previous, task);
+    }
+
+    public static boolean isIndexable(Task task) {
+        return task != null && task.getId() != null && task.getDateTime() != null; // Задачи без ID или даты не индексируются
+    }
+
+    private static Key keyOf(Task task) {
+        return new Key(task.getDateTime().getTime(), task.getId());
+    }
+
+    // Ключ сортировки: время задачи, затем ID для различения задач с одинаковым временем
+    private static final class Key implements Comparable<Key> {
+        final long time;
+        final String id;
+
+        Key(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byTimeResult = Long.compare(time, other.time);
+            return byTimeResult != 0 ? byTimeResult : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return time == key.time && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(time) + id.hashCode();
+        }
+    }
+}
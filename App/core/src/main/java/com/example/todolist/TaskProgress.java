@@ -0,0 +1,94 @@
+package com.example.todolist;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Счетчики прогресса отображаемых задач, обновляемые при каждом добавлении, удалении
+// и переключении задачи, — получение процента не требует обхода списка.
+// В режиме с весами невыполненная задача засчитывается долей выполненных подзадач; доли хранятся,
+// пока подзадачи задачи известны (лежат в кэше), и переживают clear(), remove() и повторное add().
+public final class TaskProgress {
+    private static final int FULL_CREDIT = 1000; // Вклад выполненной задачи (доли подзадач — в тысячных)
+
+    private final Map<String, Boolean> completedById = new HashMap<>(); // Отображаемые задачи и их статус
+    private final Map<String, Integer> subTaskCredit = new HashMap<>(); // Доля выполненных подзадач по ID задачи, в тысячных
+    private int completedCount = 0;
+    private long creditSum = 0; // Сумма вкладов отображаемых задач
+    private boolean weightedBySubTasks = false;
+
+    public void clear() {
+        completedById.clear();
+        completedCount = 0;
+        creditSum = 0;
+    }
+
+    // Задача появилась в списке
+    public void add(Task task) {
+        String id = task.getId();
+        if (id == null || completedById.containsKey(id)) return;
+        boolean completed = task.isCompleted();
+        completedById.put(id, completed);
+        if (completed) completedCount++;
+        creditSum += creditOf(id, completed);
+    }
+
+    // Задача ушла из списка; используется сохраненный статус, а не поле объекта, которое могли изменить на месте
+    public void remove(String taskId) {
+        Boolean completed = taskId != null ? completedById.remove(taskId) : null;
+        if (completed == null) return;
+        if (completed) completedCount--;
+        creditSum -= creditOf(taskId, completed);
+    }
+
+    public void setCompleted(String taskId, boolean completed) {
+        Boolean previous = taskId != null ? completedById.get(taskId) : null;
+        if (previous == null || previous == completed) return;
+        remove(taskId);
+        completedById.put(taskId, completed);
+        if (completed) completedCount++;
+        creditSum += creditOf(taskId, completed);
+    }
+
+    // Новые подзадачи задачи — меняется только ее вклад
+    public void setSubTasks(String taskId, List<SubTask> subTasks) {
+        if (taskId == null) return;
+        int done = 0;
+        for (SubTask subTask : subTasks) {
+            if (subTask.isCompleted()) done++;
+        }
+        int credit = subTasks.isEmpty() ? 0 : done * FULL_CREDIT / subTasks.size();
+        Boolean completed = completedById.get(taskId);
+        if (completed != null) creditSum -= creditOf(taskId, completed);
+        subTaskCredit.put(taskId, credit);
+        if (completed != null) creditSum += creditOf(taskId, completed);
+    }
+
+    // Подзадачи задачи больше не известны (ушли из кэша): ее доля удаляется, вклад невыполненной задачи — 0
+    public void forgetSubTasks(String taskId) {
+        Integer credit = taskId != null ? subTaskCredit.remove(taskId) : null;
+        if (credit == null) return;
+        if (Boolean.FALSE.equals(completedById.get(taskId))) creditSum -= credit;
+    }
+
+    public void setWeightedBySubTasks(boolean weightedBySubTasks) {
+        this.weightedBySubTasks = weightedBySubTasks;
+    }
+
+    public boolean isWeightedBySubTasks() { return weightedBySubTasks; }
+    public int getTotalCount() { return completedById.size(); }
+    public int getCompletedCount() { return completedCount; }
+
+    public int getPercentage() {
+        int total = completedById.size();
+        if (total == 0) return 0;
+        if (!weightedBySubTasks) return completedCount * 100 / total;
+        return (int) (creditSum * 100 / ((long) total * FULL_CREDIT));
+    }
+
+    private int creditOf(String taskId, boolean completed) {
+        if (completed) return FULL_CREDIT;
+        Integer credit = subTaskCredit.get(taskId);
+        return credit != null ? credit : 0;
+    }
+}
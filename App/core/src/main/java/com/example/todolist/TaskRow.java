@@ -0,0 +1,49 @@
+package com.example.todolist;
+
+// Строка задачи: текст "описание (дата)" и зачеркивание подготовлены заранее
+public final class TaskRow implements RowModel {
+    public final Task task;
+    public final String text; // Описание с датой и временем
+    public final boolean completed; // Статус на момент построения строки (зачеркивание текста)
+    public final long day; // Номер дня задачи в локальном часовом поясе
+    private final long stableId;
+
+    public TaskRow(Task task, String text, boolean completed, long day) {
+        this(task, text, completed, day, StableIds.of("task", task.getId()));
+    }
+
+    private TaskRow(Task task, String text, boolean completed, long day, long stableId) {
+        this.task = task;
+        this.text = text;
+        this.completed = completed;
+        this.day = day;
+        this.stableId = stableId;
+    }
+
+    // Та же строка с другим статусом выполнения — без повторного форматирования
+    public TaskRow withCompleted(boolean completed) {
+        return completed == this.completed ? this : new TaskRow(task, text, completed, day, stableId);
+    }
+
+    public String getTaskId() {
+        return task.getId();
+    }
+
+    @Override
+    public long getStableId() {
+        return stableId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TaskRow)) return false;
+        TaskRow other = (TaskRow) o;
+        return completed == other.completed && text.equals(other.text) && task.equals(other.task);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * text.hashCode() + (completed ? 1 : 0);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.todolist;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyStatsTest {
+    @Test
+    public void summary_reportsNearestRankPercentiles() {
+        LatencyStats stats = new LatencyStats();
+        for (int i = 1; i <= 100; i++) stats.record("bind", i * 1_000L);
+        LatencyStats.Summary summary = stats.summary("bind");
+        assertEquals(100, summary.count);
+        assertEquals(50_000L, summary.p50);
+        assertEquals(90_000L, summary.p90);
+        assertEquals(99_000L, summary.p99);
+        assertEquals(100_000L, summary.max);
+        assertNull(stats.summary("diff"));
+    }
+
+    @Test
+    public void summary_usesOnlyRecentSamplesButKeepsTotals() {
+        LatencyStats stats = new LatencyStats();
+        stats.record("frame", 500_000_000L); // Давний замороженный кадр
+        for (int i = 0; i < LatencyStats.CAPACITY; i++) stats.record("frame", 1_000_000L);
+        LatencyStats.Summary summary = stats.summary("frame");
+        assertEquals(LatencyStats.CAPACITY + 1, summary.count);
+        assertEquals(1_000_000L, summary.p99); // Вытеснен из буфера
+        assertEquals(500_000_000L, summary.max);
+    }
+}
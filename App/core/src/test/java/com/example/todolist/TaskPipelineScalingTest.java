@@ -0,0 +1,134 @@
+package com.example.todolist;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Бюджеты масштабирования конвейера списка на синтетических наборах (TaskDataset):
+ * время и память построения строк, разбора документов и пересчета прогресса.
+ * Бюджеты с запасом: тест падает при смене асимптотики, а не при колебаниях скорости машины.
+ */
+public class TaskPipelineScalingTest {
+    private static final int SMALL = 10_000;
+    private static final int LARGE = 100_000;
+    private static final int RUNS = 5;
+    private static final long MAX_SCALING_FACTOR = 40; // Рост времени при 10x задач: линейный — ~10, квадратичный — ~100
+    private static final long MAX_LIST_MILLIS = 2_000; // Построение строк для 100k задач
+    private static final long MAX_LIST_BYTES_PER_TASK = 2_048; // Строка задачи, ее текст и доля заголовков
+    private static final long MAX_DECODE_MILLIS = 1_000; // Разбор 100k документов
+    private static final long MAX_DECODE_BYTES_PER_DOCUMENT = 512;
+    private static final int TOGGLES = 10_000;
+    private static final long MAX_TOGGLE_BYTES = 64; // Переключение задачи не копирует счетчики
+
+    @Test
+    public void dataset_isDeterministicAndSkewed() {
+        TaskDataset first = TaskDataset.builder().seed(7).tasks(2_000).subTasksPerTask(2).build();
+        TaskDataset second = TaskDataset.builder().seed(7).tasks(2_000).subTasksPerTask(2).build();
+        assertEquals(first.tasks, second.tasks);
+        assertEquals(first.subTasks, second.subTasks);
+        assertEquals(4_000, first.subTaskCount());
+        for (int i = 1; i < first.tasks.size(); i++) {
+            assertTrue(first.tasks.get(i - 1).getDateTime().compareTo(first.tasks.get(i).getDateTime()) <= 0);
+        }
+
+        int uniformPeak = busiestDay(TaskDataset.builder().tasks(LARGE / 10).skew(TaskDataset.DateSkew.UNIFORM).build());
+        int hotPeak = busiestDay(TaskDataset.builder().tasks(LARGE / 10).skew(TaskDataset.DateSkew.HOT_DAYS).build());
+        assertTrue("HOT_DAYS peak " + hotPeak + " vs UNIFORM " + uniformPeak, hotPeak > 10 * uniformPeak);
+    }
+
+    @Test
+    public void displayList_scalesLinearly() {
+        TaskDataset small = dataset(SMALL);
+        TaskDataset large = dataset(LARGE);
+        Map<String, List<SubTask>> smallExpanded = small.expandedEvery(10);
+        Map<String, List<SubTask>> largeExpanded = large.expandedEvery(10);
+        RowModelFactory rowFactory = new RowModelFactory();
+
+        assertEquals(LARGE + large.dayCount() + (LARGE / 10) * 3, rowFactory.buildList(large.tasks, true, largeExpanded).size());
+
+        long smallNanos = PerfBudget.bestNanos(RUNS, () -> rowFactory.buildList(small.tasks, true, smallExpanded));
+        long largeNanos = PerfBudget.bestNanos(RUNS, () -> rowFactory.buildList(large.tasks, true, largeExpanded));
+        assertTrue(PerfBudget.describe("buildList 100k, ms", largeNanos / 1_000_000, MAX_LIST_MILLIS), largeNanos / 1_000_000 <= MAX_LIST_MILLIS);
+        assertTrue(PerfBudget.describe("buildList 100k/10k", largeNanos / smallNanos, MAX_SCALING_FACTOR), largeNanos <= MAX_SCALING_FACTOR * smallNanos);
+
+        long bytes = PerfBudget.allocatedBytes(() -> rowFactory.buildList(large.tasks, true, largeExpanded));
+        assumeTrue("Allocation counting unsupported", bytes >= 0);
+        assertTrue(PerfBudget.describe("buildList bytes/task", bytes / LARGE, MAX_LIST_BYTES_PER_TASK), bytes / LARGE <= MAX_LIST_BYTES_PER_TASK);
+    }
+
+    @Test
+    public void decode_scalesLinearly() {
+        List<Map<String, Object>> small = dataset(SMALL).taskDocuments();
+        List<Map<String, Object>> large = dataset(LARGE).taskDocuments();
+        long smallNanos = PerfBudget.bestNanos(RUNS, () -> decodeAll(small));
+        long largeNanos = PerfBudget.bestNanos(RUNS, () -> decodeAll(large));
+        assertTrue(PerfBudget.describe("decode 100k, ms", largeNanos / 1_000_000, MAX_DECODE_MILLIS), largeNanos / 1_000_000 <= MAX_DECODE_MILLIS);
+        assertTrue(PerfBudget.describe("decode 100k/10k", largeNanos / smallNanos, MAX_SCALING_FACTOR), largeNanos <= MAX_SCALING_FACTOR * smallNanos);
+
+        long bytes = PerfBudget.allocatedBytes(() -> decodeAll(large));
+        assumeTrue("Allocation counting unsupported", bytes >= 0);
+        assertTrue(PerfBudget.describe("decode bytes/document", bytes / LARGE, MAX_DECODE_BYTES_PER_DOCUMENT), bytes / LARGE <= MAX_DECODE_BYTES_PER_DOCUMENT);
+    }
+
+    @Test
+    public void progressToggle_doesNotDependOnTaskCount() {
+        TaskDataset smallDataset = dataset(SMALL / 10);
+        TaskDataset largeDataset = dataset(LARGE);
+        TaskProgress small = progressOf(smallDataset);
+        TaskProgress large = progressOf(largeDataset);
+        String smallId = smallDataset.tasks.get(smallDataset.tasks.size() / 2).getId();
+        String largeId = largeDataset.tasks.get(LARGE / 2).getId();
+        long smallNanos = PerfBudget.bestNanos(RUNS, () -> toggle(small, smallId));
+        long largeNanos = PerfBudget.bestNanos(RUNS, () -> toggle(large, largeId));
+        // 100x задач: переключение с обходом списка стало бы в ~100 раз медленнее
+        assertTrue(PerfBudget.describe("toggle 100k/1k", largeNanos / Math.max(1, smallNanos), 10), largeNanos <= 10 * smallNanos + 5_000_000);
+
+        long bytes = PerfBudget.allocatedBytes(() -> toggle(large, largeId));
+        assumeTrue("Allocation counting unsupported", bytes >= 0);
+        assertTrue(PerfBudget.describe("toggle bytes", bytes / TOGGLES, MAX_TOGGLE_BYTES), bytes / TOGGLES <= MAX_TOGGLE_BYTES);
+    }
+
+    private static TaskDataset dataset(int tasks) {
+        return TaskDataset.builder().tasks(tasks).subTasksPerTask(3).skew(TaskDataset.DateSkew.HOT_DAYS).build();
+    }
+
+    private static void decodeAll(List<Map<String, Object>> documents) {
+        for (int i = 0, size = documents.size(); i < size; i++) {
+            TaskCodec.decode("id", documents.get(i));
+        }
+    }
+
+    private static TaskProgress progressOf(TaskDataset dataset) {
+        TaskProgress progress = new TaskProgress();
+        progress.setWeightedBySubTasks(true);
+        for (Task task : dataset.tasks) {
+            progress.setSubTasks(task.getId(), dataset.subTasks.get(task.getId()));
+            progress.add(task);
+        }
+        return progress;
+    }
+
+    private static void toggle(TaskProgress progress, String taskId) {
+        for (int i = 0; i < TOGGLES; i++) {
+            progress.setCompleted(taskId, i % 2 == 0);
+            progress.getPercentage();
+        }
+    }
+
+    private static int busiestDay(TaskDataset dataset) {
+        DayGrouper grouper = new DayGrouper();
+        Map<Long, Integer> perDay = new HashMap<>();
+        int peak = 0;
+        for (Task task : dataset.tasks) {
+            int count = perDay.merge(grouper.dayOf(task), 1, Integer::sum);
+            peak = Math.max(peak, count);
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.todolist;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Измерения для тестов масштабирования: лучшее время после прогрева и объем выделенной памяти потока.
+// Лучший из нескольких запусков устойчивее медианы к паузам GC и JIT на общей сборочной машине.
+// Бюджеты задаются с запасом в несколько раз: тест ловит смену асимптотики (O(n) -> O(n²),
+// лишние привязки строк), а не колебания скорости сборочной машины
+public final class PerfBudget {
+    private static final int WARMUP_RUNS = 3;
+
+    private PerfBudget() {
+    }
+
+    // Лучшее время выполнения action за runs запусков, нс
+    public static long bestNanos(int runs, Runnable action) {
+        for (int i = 0; i < WARMUP_RUNS; i++) action.run();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            action.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    // Байты, выделенные текущим потоком за выполнение action (после прогрева); -1 — JVM не умеет считать
+    public static long allocatedBytes(Runnable action) {
+        for (int i = 0; i < WARMUP_RUNS; i++) action.run();
+        return allocatedBytesOnce(action);
+    }
+
+    // То же без прогрева — для действий, которые нельзя повторить (первая раскладка списка)
+    public static long allocatedBytesOnce(Runnable action) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+        if (!counter.isThreadAllocatedMemorySupported() || !counter.isThreadAllocatedMemoryEnabled()) return -1;
+        long threadId = Thread.currentThread().getId();
+        long before = counter.getThreadAllocatedBytes(threadId);
+        action.run();
+        return counter.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    // Сообщение для assert: что измерено и какой бюджет
+    public static String describe(String what, long actual, long budget) {
+        return what + ": " + actual + " (budget " + budget + ")";
+    }
+}
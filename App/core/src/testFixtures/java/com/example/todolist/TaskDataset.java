@@ -0,0 +1,209 @@
+package com.example.todolist;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Детерминированный набор данных одного пользователя для тестов масштабирования и бенчмарков:
+// N задач, M подзадач на задачу, доли напоминаний и выполненных задач, распределение дат с перекосом.
+// Одинаковые параметры и seed всегда дают одинаковый набор (ID, тексты, даты)
+public final class TaskDataset {
+    // Распределение дат задач по интервалу
+    public enum DateSkew {
+        UNIFORM, // Равномерно по дням и времени
+        HOT_DAYS, // По закону Ципфа: несколько дней с сотнями задач и длинный хвост почти пустых
+        DEADLINES // Скопление к концу интервала, половина задач — на одно и то же время (09:00)
+    }
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final int ID_LENGTH = 20; // Как у автоматических ID документов Firestore
+    private static final String ID_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final String[] WORDS = {"купить", "позвонить", "отчет", "встреча", "хлеб", "врач", "проект",
+            "оплатить", "счет", "маме", "спортзал", "письмо", "ремонт", "билеты", "книга", "дедлайн"};
+    private static final long[] REMINDER_OFFSETS = {5 * MINUTE, 15 * MINUTE, 60 * MINUTE, DAY}; // За сколько до задачи
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    public final String userId;
+    public final List<Task> tasks; // Отсортированы по (dateTime, id), как их отдает хранилище
+    public final Map<String, List<SubTask>> subTasks; // Подзадачи по ID задачи, у каждой задачи ровно M
+
+    private TaskDataset(String userId, List<Task> tasks, Map<String, List<SubTask>> subTasks) {
+        this.userId = userId;
+        this.tasks = Collections.unmodifiableList(tasks);
+        this.subTasks = Collections.unmodifiableMap(subTasks);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int subTaskCount() {
+        int count = 0;
+        for (List<SubTask> list : subTasks.values()) count += list.size();
+        return count;
+    }
+
+    // Число разных дней задач (заголовков режима списка) в часовом поясе по умолчанию
+    public int dayCount() {
+        DayGrouper grouper = new DayGrouper();
+        int days = 0;
+        long previous = Long.MIN_VALUE;
+        for (Task task : tasks) {
+            long day = grouper.dayOf(task);
+            if (day != previous) days++;
+            previous = day;
+        }
+        return days;
+    }
+
+    // Подзадачи каждой every-й задачи (раскрытые задачи плоского режима)
+    public Map<String, List<SubTask>> expandedEvery(int every) {
+        Map<String, List<SubTask>> expanded = new HashMap<>();
+        for (int i = 0; i < tasks.size(); i += every) {
+            String taskId = tasks.get(i).getId();
+            expanded.put(taskId, subTasks.get(taskId));
+        }
+        return expanded;
+    }
+
+    // Карты данных документов задач в том виде, в каком их возвращает снимок (даты — Date)
+    public List<Map<String, Object>> taskDocuments() {
+        List<Map<String, Object>> documents = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            Map<String, Object> data = TaskCodec.encode(task);
+            data.put(TaskCodec.FIELD_IS_EXPANDED, false); // Поле старых документов тоже разбирается
+            documents.add(data);
+        }
+        return documents;
+    }
+
+    public static final class Builder {
+        private long seed = 42L;
+        private String userId = "user";
+        private int taskCount = 1000;
+        private int subTasksPerTask = 0;
+        private double reminderShare = 0.5;
+        private double completedShare = 0.3;
+        private DateSkew skew = DateSkew.UNIFORM;
+        private long startMillis = 1_700_000_000_000L;
+        private int days = 365;
+
+        private Builder() {
+        }
+
+        public Builder seed(long seed) { this.seed = seed; return this; }
+        public Builder userId(String userId) { this.userId = userId; return this; }
+        public Builder tasks(int taskCount) { this.taskCount = taskCount; return this; }
+        public Builder subTasksPerTask(int subTasksPerTask) { this.subTasksPerTask = subTasksPerTask; return this; }
+        public Builder reminderShare(double reminderShare) { this.reminderShare = reminderShare; return this; }
+        public Builder completedShare(double completedShare) { this.completedShare = completedShare; return this; }
+        public Builder skew(DateSkew skew) { this.skew = skew; return this; }
+        public Builder startMillis(long startMillis) { this.startMillis = startMillis; return this; }
+        public Builder days(int days) { this.days = days; return this; }
+
+        public TaskDataset build() {
+            if (taskCount < 0 || subTasksPerTask < 0 || days <= 0) throw new IllegalArgumentException("Negative size");
+            Random random = new Random(seed);
+            DaySampler daySampler = new DaySampler(skew, days, random);
+            List<Task> tasks = new ArrayList<>(taskCount);
+            for (int i = 0; i < taskCount; i++) {
+                long time = startMillis + daySampler.next() * DAY + minuteOfDay(random) * MINUTE;
+                Task task = new Task(userId, description(random), new Date(time));
+                task.setId(randomId(random));
+                task.setCompleted(random.nextDouble() < completedShare);
+                if (random.nextDouble() < reminderShare) {
+                    task.setReminderTime(new Date(time - REMINDER_OFFSETS[random.nextInt(REMINDER_OFFSETS.length)]));
+                }
+                tasks.add(task);
+            }
+            Collections.sort(tasks, (a, b) -> {
+                int byTime = a.getDateTime().compareTo(b.getDateTime());
+                return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+            });
+            Map<String, List<SubTask>> subTasks = new HashMap<>();
+            for (Task task : tasks) {
+                List<SubTask> list = new ArrayList<>(subTasksPerTask);
+                for (int j = 0; j < subTasksPerTask; j++) {
+                    SubTask subTask = new SubTask(description(random), random.nextDouble() < completedShare);
+                    subTask.setSubTaskId(randomId(random));
+                    list.add(subTask);
+                }
+                subTasks.put(task.getId(), list);
+            }
+            return new TaskDataset(userId, tasks, subTasks);
+        }
+
+        private int minuteOfDay(Random random) {
+            if (skew == DateSkew.DEADLINES && random.nextBoolean()) return 9 * 60; // Одинаковое время у многих задач
+            return random.nextInt(24 * 60);
+        }
+    }
+
+    // Номер дня задачи от начала интервала
+    private static final class DaySampler {
+        private final DateSkew skew;
+        private final int days;
+        private final Random random;
+        private final double[] cumulative; // Накопленные вероятности рангов (HOT_DAYS)
+        private final int[] dayOfRank; // День по рангу популярности: горячие дни разбросаны по интервалу
+
+        DaySampler(DateSkew skew, int days, Random random) {
+            this.skew = skew;
+            this.days = days;
+            this.random = random;
+            if (skew == DateSkew.HOT_DAYS) {
+                cumulative = new double[days];
+                double sum = 0;
+                for (int rank = 0; rank < days; rank++) {
+                    sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                    cumulative[rank] = sum;
+                }
+                for (int rank = 0; rank < days; rank++) cumulative[rank] /= sum;
+                List<Integer> order = new ArrayList<>(days);
+                for (int day = 0; day < days; day++) order.add(day);
+                Collections.shuffle(order, random);
+                dayOfRank = new int[days];
+                for (int rank = 0; rank < days; rank++) dayOfRank[rank] = order.get(rank);
+            } else {
+                cumulative = null;
+                dayOfRank = null;
+            }
+        }
+
+        int next() {
+            switch (skew) {
+                case HOT_DAYS:
+                    int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+                    if (rank < 0) rank = -rank - 1;
+                    return dayOfRank[Math.min(rank, days - 1)];
+                case DEADLINES:
+                    double r = random.nextDouble();
+                    return Math.min(days - 1, (int) (days * (1 - r * r * r))); // Плотность растет к концу интервала
+                default:
+                    return random.nextInt(days);
+            }
+        }
+    }
+
+    private static String description(Random random) {
+        int words = 1 + random.nextInt(8);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String randomId(Random random) {
+        char[] id = new char[ID_LENGTH];
+        for (int i = 0; i < ID_LENGTH; i++) id[i] = ID_ALPHABET.charAt(random.nextInt(ID_ALPHABET.length()));
+        return new String(id);
+    }
+}